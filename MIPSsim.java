@@ -8,11 +8,45 @@ Section 6692
 */
 
 import java.io.*;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import mipssim.api.Machine;
+import mipssim.api.MachineFault;
+import mipssim.api.MachineListener;
 
 /**
  *
@@ -20,376 +54,5143 @@ import java.util.Scanner;
  */
 public class MIPSsim {
     //filenames
-    private static final String FILENAME_DISASSEMBLY = "disassembly.txt";
-    private static final String FILENAME_SIMULATION = "simulation.txt";
+    static final String FILENAME_DISASSEMBLY = "disassembly.txt";
+    static final String FILENAME_SIMULATION = "simulation.txt";
+    static final String FILENAME_DELTA_TRACE = "simulation.delta";
 
     //Paths
     private static final String PATH = "./";
 
+    //options
+    private static final String OPTION_BATCH = "batch";
+    private static final String OPTION_OUTPUT = "output";
+    private static final String OPTION_THREADS = "threads";
+    private static final String OPTION_CACHE = "cache";
+    private static final int DEFAULT_CACHE_SIZE = 64;
+    private static final String DEFAULT_BATCH_OUTPUT = "batch-output";
+    private static final String OPTION_FORMAT = "format";
+    private static final String OPTION_ENGINE = "engine";
+    private static final String ENGINE_BLOCKS = "blocks";
+    private static final String ENGINE_INTERPRETER = "interpreter";
+    private static final String ENGINE_PIPELINE = "pipeline";
+    private static final String OPTION_FORWARDING = "forwarding";
+    private static final String OPTION_FUSION = "fusion";
+    private static final String OPTION_DCACHE = "dcache";
+    private static final String OPTION_DCACHE_WAYS = "dcache-ways";
+    private static final String OPTION_DCACHE_BLOCK = "dcache-block";
+    private static final String OPTION_DCACHE_POLICY = "dcache-policy";
+    private static final String OPTION_DCACHE_WRITE = "dcache-write";
+    private static final String OPTION_DCACHE_MISS_PENALTY = "dcache-miss-penalty";
+    private static final String DCACHE_WRITE_BACK = "back";
+    private static final String DCACHE_WRITE_THROUGH = "through";
+    private static final String OPTION_PREDICTOR = "predictor";
+    private static final String OPTION_PREDICTOR_BITS = "predictor-bits";
+    private static final String OPTION_BRANCH_PENALTY = "branch-penalty";
+    private static final String OPTION_PROFILE = "profile";
+    private static final String OPTION_MAX_CYCLES = "max-cycles";
+    private static final String OPTION_MAX_TIME = "max-time";
+    private static final String OPTION_CHECKPOINT = "checkpoint";
+    private static final String OPTION_CHECKPOINT_INTERVAL = "checkpoint-interval";
+    private static final String OPTION_CHECKPOINT_SYNC = "checkpoint-sync";
+    private static final String OPTION_RESUME = "resume";
+    private static final String OPTION_TRACE_FORMAT = "trace-format";
+    private static final String OPTION_KEYFRAME_INTERVAL = "keyframe-interval";
+    private static final String OPTION_REBUILD = "rebuild";
+    private static final String OPTION_FUZZ = "fuzz";
+    private static final String OPTION_FUZZ_CYCLES = "fuzz-cycles";
+    private static final String OPTION_SEED = "seed";
+    private static final int DEFAULT_FUZZ_PROGRAMS = 1000;
+    private static final int DEFAULT_FUZZ_CYCLES = 100000;
+    private static final String TRACE_FORMAT_TEXT = "text";
+    private static final String TRACE_FORMAT_DELTA = "delta";
+
+    //how long a shutdown waits for the simulation to write its last checkpoint
+    private static final long CHECKPOINT_SHUTDOWN_TIMEOUT = 5000;
+
+    //exit status when the command line is missing something
+    private static final int EXIT_USAGE = 1;
+    //exit status when the simulated program faults
+    private static final int EXIT_FAULT = 2;
+    //exit status when fuzzing finds the engines disagreeing
+    private static final int EXIT_MISMATCH = 3;
+
+    //size of the buffer sitting between the simulation trace and the disk
+    private static final int SIMULATION_BUFFER_SIZE = 1 << 16;
+
 
     public static void main(String[] args) {
 
         /* Variables for Main */
-        Simulator simulator = new Simulator();
+        CommandLine commandLine = new CommandLine( args );
+
+        //a batch runs every program in a directory or manifest instead of a single file
+        if ( commandLine.hasOption( OPTION_BATCH ) ) {
+            if ( commandLine.getArgumentCount() == 0 ) {
+                System.err.println( "Usage: java MIPSsim --" + OPTION_BATCH + " [options] <directory or manifest>" );
+                System.exit( EXIT_USAGE );
+            }
+            Path source = Paths.get( commandLine.getArgument( 0 ) );
+            Path outputDirectory = Paths.get( commandLine.getOption( OPTION_OUTPUT, DEFAULT_BATCH_OUTPUT ) );
+            int threads = Integer.parseInt( commandLine.getOption( OPTION_THREADS, Integer.toString( Runtime.getRuntime().availableProcessors() ) ) );
+            int cacheSize = Integer.parseInt( commandLine.getOption( OPTION_CACHE, Integer.toString( DEFAULT_CACHE_SIZE ) ) );
+            try {
+                BatchRunner runner = new BatchRunner( commandLine, outputDirectory, threads, new DecodedProgramCache( cacheSize ) );
+                runner.run( BatchRunner.findInputs( source ) );
+            } catch ( IOException e ) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        //turn a delta trace back into simulation.txt, no program needed
+        if ( commandLine.hasOption( OPTION_REBUILD ) ) {
+            String outputName = ( commandLine.getArgumentCount() > 1 ) ? commandLine.getArgument( 1 ) : FILENAME_SIMULATION;
+            try {
+                rebuildSimulation( Paths.get( commandLine.getArgument( 0 ) ), new File( outputName ) );
+            } catch ( IOException e ) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        //check the block engine against the interpreter on random programs, no input needed
+        if ( commandLine.hasOption( OPTION_FUZZ ) ) {
+            String programs = commandLine.getOption( OPTION_FUZZ, Boolean.TRUE.toString() );
+            long seed = Long.parseLong( commandLine.getOption( OPTION_SEED, Long.toString( System.nanoTime() ) ) );
+            int cycles = Integer.parseInt(
+                    commandLine.getOption( OPTION_FUZZ_CYCLES, Integer.toString( DEFAULT_FUZZ_CYCLES ) ) );
+            int count = programs.equals( Boolean.TRUE.toString() )
+                    ? DEFAULT_FUZZ_PROGRAMS : Integer.parseInt( programs );
+            Path outputDirectory = Paths.get( commandLine.getOption( OPTION_OUTPUT, PATH ) );
+            try {
+                DifferentialFuzzer fuzzer = new DifferentialFuzzer( cycles, outputDirectory );
+                System.out.println( "Fuzzing from seed " + seed );
+                if ( !fuzzer.run( seed, count ) ) {
+                    System.exit( EXIT_MISMATCH );
+                }
+            } catch ( IOException e ) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        Simulator simulator = createSimulator( commandLine );
 
         /* Setup File Parse Operations */
 
         //setup file paths
-        final String inputName = args[0];
+        final String inputName = commandLine.getArgument( 0 );
         final Path inputPath = Paths.get( PATH + inputName );
 
-        //create scanner object and start parsing
+        //map the input file and feed it, word-by-word, into the decoder, then hand the program to the simulator
         try {
-            Scanner inputScanner = new Scanner( inputPath );
-            //feeds data, line-by-line, into simulator
-            while ( inputScanner.hasNextLine() ) {
-                simulator.processLine( inputScanner.nextLine() );
+            ProgramDecoder decoder = new ProgramDecoder();
+            createLoader( commandLine ).load( inputPath, decoder );
+            simulator.load( decoder.build() );
+            //pick up where an earlier run left off
+            if ( commandLine.hasOption( OPTION_RESUME ) ) {
+                simulator.restore( Checkpoint.read( Paths.get( commandLine.getOption( OPTION_RESUME, null ) ) ) );
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        if ( commandLine.hasOption( OPTION_CHECKPOINT ) ) {
+            setupCheckpoints( simulator, commandLine );
+        }
+
         //output disassembly
         try {
-            File file = new File( FILENAME_DISASSEMBLY );
-            BufferedWriter output = new BufferedWriter(new FileWriter(file));
-            output.write( simulator.getDisassemblyOutput() );
-            output.close();
+            writeDisassembly( simulator, new File( FILENAME_DISASSEMBLY ) );
         } catch ( IOException e ) {
             e.printStackTrace();
         }
 
-        //run simulation
-        simulator.run();
-
-        //output simulation
+        //run simulation, streaming every cycle out to the simulation file as it happens
+        SimulationFault fault = null;
         try {
-            File file = new File( FILENAME_SIMULATION );
-            BufferedWriter output = new BufferedWriter(new FileWriter(file));
-            output.write( simulator.getSimulationOutput() );
-            output.close();
+            try {
+                writeTrace( simulator, commandLine, Paths.get( PATH ) );
+            } catch ( SimulationFault e ) {
+                //everything up to the fault has been written out, and the reports still cover it
+                fault = e;
+                System.err.println( "Simulation stopped: " + e.getMessage() );
+            }
+            writeReports( simulator, Paths.get( PATH ) );
         } catch ( IOException e ) {
             e.printStackTrace();
         }
+        if ( fault != null ) {
+            System.exit( EXIT_FAULT );
+        }
     }
-}
 
-class Simulator implements SimulatorCallback {
-    public static final String FILENAME_DISASSEMBLY = "disassembly.txt";
-    public static final String FILENAME_SIMULATION = "simulation.txt";
+    /**
+     * @return a new simulator, set up the way the command line asks for.
+     */
+    static Simulator createSimulator( CommandLine commandLine ) {
+        Simulator simulator = new Simulator();
 
-    public static final int IPR = 8;    //items per row (for output)
-    public static final char TAB = '\t';
-    public static final char NEWLINE = '\n';
-    public static final char POUND = '#';
-    public static final char COLON = ':';
-    public static final char R = 'R';
-    public static final char SPACE = ' ';
-    public static final String COMMA_SPACE = ", ";
+        //optional second argument picks which cycles make it into the simulation output
+        if ( commandLine.getArgumentCount() > 1 ) {
+            simulator.setTraceMode( TraceMode.parse( commandLine.getArgument( 1 ) ) );
+        }
 
-    private static final String SIMULATION_SEPARATOR = "--------------------" + NEWLINE;
-    private static final String SIMULATION_CYCLE_HEADER = "Cycle:";
-    private static final String[] SIMULATION_REGISTER_HEADERS = { "R00:", "R08:", "R16:", "R24:" };
-    private static final String SIMULATION_REGISTER_TITLE = "Registers";
-    private static final String SIMULATION_DATA_TITLE = "Data";
+        //the interpreter runs one instruction at a time; blocks is only used when no cycle is traced
+        String engine = commandLine.getOption( OPTION_ENGINE, ENGINE_BLOCKS );
+        if ( !engine.equals( ENGINE_BLOCKS ) && !engine.equals( ENGINE_INTERPRETER ) && !engine.equals( ENGINE_PIPELINE ) ) {
+            throw new IllegalArgumentException( "Unknown engine: " + engine );
+        }
+        simulator.setBlockCompilation( engine.equals( ENGINE_BLOCKS ) );
+        //adjacent instructions compiled blocks fuse into one operation
+        simulator.setFusion(
+                BasicBlock.parseFusion( commandLine.getOption( OPTION_FUSION, BasicBlock.FUSION_DEFAULT ) ) );
+        //the pipeline engine is the interpreter, timed on a five stage pipeline as it goes
+        if ( engine.equals( ENGINE_PIPELINE ) ) {
+            boolean forwarding = Boolean.parseBoolean( commandLine.getOption( OPTION_FORWARDING, Boolean.TRUE.toString() ) );
+            simulator.addObserver( new PipelineModel( forwarding ) );
+        }
+
+        //a data cache model in front of LW and SW, sized in bytes
+        if ( commandLine.hasOption( OPTION_DCACHE ) ) {
+            simulator.addObserver( createCacheModel( commandLine ) );
+        }
+
+        //one or more branch predictors, comma separated, compared side by side
+        if ( commandLine.hasOption( OPTION_PREDICTOR ) ) {
+            String[] names = commandLine.getOption( OPTION_PREDICTOR, null ).split( "," );
+            int indexBits = Integer.parseInt( commandLine.getOption( OPTION_PREDICTOR_BITS, "10" ) );
+            BranchPredictor[] predictors = new BranchPredictor[names.length];
+            for ( int a = 0; a != names.length; ++a ) {
+                predictors[a] = BranchPredictor.forName( names[a], indexBits );
+            }
+            int penalty = Integer.parseInt( commandLine.getOption( OPTION_BRANCH_PENALTY, "2" ) );
+            simulator.addObserver( new BranchPredictorModel( predictors, penalty ) );
+        }
 
+        if ( commandLine.hasOption( OPTION_PROFILE ) ) {
+            simulator.setProfiler( new Profiler() );
+        }
+
+        //runaway programs are stopped with a fault once they use up either budget
+        int cycleBudget = Integer.parseInt( commandLine.getOption( OPTION_MAX_CYCLES, "0" ) );
+        long timeBudget = Long.parseLong( commandLine.getOption( OPTION_MAX_TIME, "0" ) );
+        simulator.setBudget( cycleBudget, timeBudget );
+
+        return simulator;
+    }
 
     /**
-     * @param args the command line arguments
+     * Writes checkpoints every so many cycles, if asked to, and always once more if the JVM is shut down (Ctrl-C,
+     * SIGTERM) while the simulation is still running.
      */
+    static void setupCheckpoints( final Simulator simulator, CommandLine commandLine ) {
+        Path checkpointPath = Paths.get( commandLine.getOption( OPTION_CHECKPOINT, null ) );
+        int interval = Integer.parseInt( commandLine.getOption( OPTION_CHECKPOINT_INTERVAL, "0" ) );
+        simulator.setCheckpoint( checkpointPath, interval );
+        simulator.setCheckpointSync( Boolean.parseBoolean( commandLine.getOption( OPTION_CHECKPOINT_SYNC,
+                Boolean.TRUE.toString() ) ) );
+
+        Runtime.getRuntime().addShutdownHook( new Thread() {
+            @Override
+            public void run() {
+                if ( !simulator.isRunning() ) {
+                    return;
+                }
+                simulator.requestCheckpoint();
+                long deadline = System.currentTimeMillis() + CHECKPOINT_SHUTDOWN_TIMEOUT;
+                while ( simulator.isCheckpointPending() && simulator.isRunning() && System.currentTimeMillis() < deadline ) {
+                    try {
+                        Thread.sleep( 10 );
+                    } catch ( InterruptedException e ) {
+                        return;
+                    }
+                }
+            }
+        } );
+    }
 
-    //MIPS Simulated Memory
-    public static final int MEMORY_SPACING = 4;
-    private int[] register = new int[32];
-    private ArrayList<Integer> memory = new ArrayList<Integer>();
+    static CacheModel createCacheModel( CommandLine commandLine ) {
+        int size = Integer.parseInt( commandLine.getOption( OPTION_DCACHE, null ) );
+        int ways = Integer.parseInt( commandLine.getOption( OPTION_DCACHE_WAYS, "1" ) );
+        int blockSize = Integer.parseInt( commandLine.getOption( OPTION_DCACHE_BLOCK, "16" ) );
+        int policy = CacheModel.parsePolicy( commandLine.getOption( OPTION_DCACHE_POLICY, "lru" ) );
+        String write = commandLine.getOption( OPTION_DCACHE_WRITE, DCACHE_WRITE_BACK );
+        if ( !write.equals( DCACHE_WRITE_BACK ) && !write.equals( DCACHE_WRITE_THROUGH ) ) {
+            throw new IllegalArgumentException( "Unknown write policy: " + write );
+        }
+        int missPenalty = Integer.parseInt( commandLine.getOption( OPTION_DCACHE_MISS_PENALTY, "20" ) );
+        return new CacheModel( size, ways, blockSize, policy, write.equals( DCACHE_WRITE_BACK ), missPenalty );
+    }
 
+    static String getFormat( CommandLine commandLine ) {
+        return commandLine.getOption( OPTION_FORMAT, ProgramLoader.FORMAT_TEXT );
+    }
 
-    //parsing control variables
-    private int processingAddress = 128;
-    private boolean isProcessingInstructions = true;
+    static ProgramLoader createLoader( CommandLine commandLine ) {
+        return ProgramLoader.forFormat( getFormat( commandLine ) );
+    }
 
-    //execution control variables.
-    private int cycle = 1;              //increases no matter what
-    //private int executionAddress = 128; //actually determines where we are in execution.
-    private int memoryStartAddress;
-    private InstructionNode start = null;
-    private InstructionNode end = null;
-    private InstructionNode current = null;
+    static void writeDisassembly( Simulator simulator, File file ) throws IOException {
+        BufferedWriter output = new BufferedWriter( new FileWriter( file ) );
+        try {
+            output.write( simulator.getDisassemblyOutput() );
+        } finally {
+            output.close();
+        }
+    }
 
-    //output variables
-    private StringBuilder disassemblyOutput = new StringBuilder();
-    private StringBuilder simulationOutput = new StringBuilder();
+    /**
+     * Runs the simulation into the directory, as simulation.txt or as simulation.delta depending on the trace format.
+     */
+    static void writeTrace( Simulator simulator, CommandLine commandLine, Path directory ) throws IOException {
+        String format = commandLine.getOption( OPTION_TRACE_FORMAT, TRACE_FORMAT_TEXT );
+        if ( format.equals( TRACE_FORMAT_TEXT ) ) {
+            writeSimulation( simulator, directory.resolve( FILENAME_SIMULATION ).toFile() );
+        }
+        else if ( format.equals( TRACE_FORMAT_DELTA ) ) {
+            int keyframeInterval = Integer.parseInt( commandLine.getOption( OPTION_KEYFRAME_INTERVAL,
+                    Integer.toString( DeltaTrace.DEFAULT_KEYFRAME_INTERVAL ) ) );
+            writeDeltaTrace( simulator, directory.resolve( FILENAME_DELTA_TRACE ).toFile(), keyframeInterval );
+        }
+        else {
+            throw new IllegalArgumentException( "Unknown trace format: " + format );
+        }
+    }
+
+    /**
+     * Writes the report of every observer the simulator has into the directory.
+     */
+    static void writeReports( Simulator simulator, Path directory ) throws IOException {
+        for ( ExecutionObserver observer : simulator.getObservers() ) {
+            observer.writeReports( directory );
+        }
+        if ( simulator.getProfiler() != null ) {
+            simulator.getProfiler().writeReports( directory );
+        }
+    }
+
+    static void writeDeltaTrace( Simulator simulator, File file, int keyframeInterval ) throws IOException {
+        OutputStream output = new BufferedOutputStream( new FileOutputStream( file ), SIMULATION_BUFFER_SIZE );
+        try {
+            simulator.run( new DeltaTrace.Output( output, keyframeInterval ) );
+        } finally {
+            output.close();
+        }
+    }
+
+    static void rebuildSimulation( Path deltaTrace, File file ) throws IOException {
+        InputStream input = new BufferedInputStream( Files.newInputStream( deltaTrace ), SIMULATION_BUFFER_SIZE );
+        try {
+            FileChannel output = openSimulation( file );
+            try {
+                new Simulator().replay( new DeltaTrace.Input( input ), output );
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
 
-    /* Parsing Methods */
+    static void writeSimulation( Simulator simulator, File file ) throws IOException {
+        FileChannel output = openSimulation( file );
+        try {
+            simulator.run( output );
+        } finally {
+            output.close();
+        }
+    }
 
     /**
-     * This method takes in, one line at a time, the text file and creates
-     * appropriate objects to accompany them.
-     * @param rawBinaryLine
+     * The simulator buffers the trace itself, so it is written straight to the file.
      */
-    public void processLine( String rawBinaryLine ) {
-        //now that we have the raw binary, we need to send it to output and to the right parser functions.
+    private static FileChannel openSimulation( File file ) throws IOException {
+        return FileChannel.open( file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING );
+    }
+}
 
-        //append to disassembly
-        disassemblyOutput.append( rawBinaryLine );
-        disassemblyOutput.append( TAB );
-        disassemblyOutput.append( processingAddress );
-        disassemblyOutput.append( TAB );
+/**
+ * Runs many programs at once, one isolated Simulator per program, on a fixed pool of threads. Programs are decoded
+ * through a shared DecodedProgramCache, so an input that shows up more than once is only decoded once. Every program gets its
+ * own directory under the output directory holding its disassembly.txt and simulation.txt, and a summary.txt with one
+ * line per program is written once they have all finished.
+ */
+class BatchRunner {
+    private static final String FILENAME_SUMMARY = "summary.txt";
+    private static final String MANIFEST_COMMENT = "#";
+    private static final String STATUS_OK = "ok";
+    private static final String STATUS_FAILED = "failed";
+    private static final String STATUS_FAULT = "fault";
+
+    private CommandLine commandLine;
+    private Path outputDirectory;
+    private int threads;
+    private DecodedProgramCache cache;
+
+    public BatchRunner( CommandLine commandLine, Path outputDirectory, int threads, DecodedProgramCache cache ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "A batch needs at least one thread: " + threads );
+        }
+        this.commandLine = commandLine;
+        this.outputDirectory = outputDirectory;
+        this.threads = threads;
+        this.cache = cache;
+    }
 
-        //check if we are still processing instructions, or if we are dealing with the data segment.
-        if ( isProcessingInstructions ) {
-            processInstructionLine( rawBinaryLine );
+    /**
+     * @param source a directory, whose files are all inputs, or a manifest listing one input per line. Relative paths
+     * in a manifest are resolved against the manifest's directory, and lines starting with '#' are skipped.
+     * @return every input, in order.
+     */
+    static List<Path> findInputs( Path source ) throws IOException {
+        List<Path> inputs = new ArrayList<Path>();
+        if ( Files.isDirectory( source ) ) {
+            DirectoryStream<Path> directory = Files.newDirectoryStream( source );
+            try {
+                for ( Path input : directory ) {
+                    if ( Files.isRegularFile( input ) ) {
+                        inputs.add( input );
+                    }
+                }
+            } finally {
+                directory.close();
+            }
+            Collections.sort( inputs );
         }
         else {
-            processDataLine( rawBinaryLine );
+            Path base = source.toAbsolutePath().getParent();
+            for ( String line : Files.readAllLines( source, StandardCharsets.UTF_8 ) ) {
+                line = line.trim();
+                if ( !line.isEmpty() && !line.startsWith( MANIFEST_COMMENT ) ) {
+                    inputs.add( base.resolve( line ) );
+                }
+            }
         }
-
-        //finish up operations
-        disassemblyOutput.append( NEWLINE );
-        incrementProcessingAddress();
+        return inputs;
     }
 
-    private void processInstructionLine( String instructionLine ) {
-        //we know the first two bits represent the Category, so we
-        //will go ahead and categorize based on that.
+    /**
+     * Simulates every input and writes the summary.
+     */
+    public void run( List<Path> inputs ) throws IOException {
+        Files.createDirectories( outputDirectory );
+
+        //give every program its own output directory, named after the input file
+        Set<String> usedNames = new HashSet<String>();
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        final long start = System.nanoTime();
+        try {
+            for ( final Path input : inputs ) {
+                final Path programDirectory = outputDirectory.resolve( uniqueName( input, usedNames ) );
+                futures.add( pool.submit( new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return simulate( input, programDirectory );
+                    }
+                } ) );
+            }
+
+            List<Result> results = new ArrayList<Result>();
+            for ( Future<Result> future : futures ) {
+                results.add( future.get() );
+            }
+            writeSummary( results, System.nanoTime() - start );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Batch interrupted" );
+        } catch ( ExecutionException e ) {
+            //simulate() catches every Throwable, so this cannot happen
+            throw new IllegalStateException( e.getCause() );
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-        //spit up category and the rest of the String
-        String categoryBits = instructionLine.substring( 0, 2 );
-        String instructionBits = instructionLine.substring( 2 );
+    private static String uniqueName( Path input, Set<String> usedNames ) {
+        String name = input.getFileName().toString();
+        String unique = name;
+        for ( int suffix = 2; !usedNames.add( unique ); ++suffix ) {
+            unique = name + "-" + suffix;
+        }
+        return unique;
+    }
 
-        //get the new instruction category.
-        InstructionCategory instructionCategory;
-        instructionCategory = InstructionCategory.getInstructionCategory( processingAddress, categoryBits, instructionBits, this );
+    /**
+     * Runs one program start to finish. Failures, errors included, are recorded in the result instead of being thrown,
+     * so one bad program cannot take down the batch.
+     */
+    private Result simulate( Path input, Path programDirectory ) {
+        Result result = new Result( input, programDirectory );
+        final long start = System.nanoTime();
+        Simulator simulator = null;
+        try {
+            simulator = MIPSsim.createSimulator( commandLine );
+            Files.createDirectories( programDirectory );
+            simulator.load( cache.get( input, MIPSsim.getFormat( commandLine ) ) );
+            MIPSsim.writeDisassembly( simulator, programDirectory.resolve( MIPSsim.FILENAME_DISASSEMBLY ).toFile() );
+            result.status = STATUS_OK;
+            try {
+                MIPSsim.writeTrace( simulator, commandLine, programDirectory );
+            } catch ( SimulationFault fault ) {
+                //the program stopped itself, the batch did nothing wrong. Its reports still cover everything that ran.
+                result.status = STATUS_FAULT;
+                result.message = fault.getMessage();
+            }
+            MIPSsim.writeReports( simulator, programDirectory );
+        } catch ( Throwable e ) {
+            //a StackOverflowError or OutOfMemoryError from one program must not lose the other programs' results
+            result.status = STATUS_FAILED;
+            result.message = e.toString();
+        }
+        if ( simulator != null ) {
+            result.cycles = simulator.getCycleCount();
+        }
+        result.nanoseconds = System.nanoTime() - start;
+        return result;
+    }
 
-        //get the specific instruction type
-        Instruction instruction;
-        instruction = instructionCategory.getInstruction();
+    private void writeSummary( List<Result> results, long nanoseconds ) throws IOException {
+        int failed = 0;
+        int faulted = 0;
+        long cycles = 0;
+        StringBuilder summary = new StringBuilder();
+        summary.append( "input\tstatus\tcycles\tmilliseconds\toutput\tmessage" ).append( Simulator.NEWLINE );
+        for ( Result result : results ) {
+            //a fault is the program's own doing, a failure the batch's
+            if ( result.status.equals( STATUS_FAULT ) ) {
+                ++faulted;
+            }
+            else if ( !result.status.equals( STATUS_OK ) ) {
+                ++failed;
+            }
+            cycles += result.cycles;
+            summary.append( result.input ).append( Simulator.TAB );
+            summary.append( result.status ).append( Simulator.TAB );
+            summary.append( result.cycles ).append( Simulator.TAB );
+            summary.append( TimeUnit.NANOSECONDS.toMillis( result.nanoseconds ) ).append( Simulator.TAB );
+            summary.append( result.outputDirectory ).append( Simulator.TAB );
+            summary.append( result.message == null ? "" : result.message ).append( Simulator.NEWLINE );
+        }
 
-        //add the disassembly output of the specific instruction
-        disassemblyOutput.append( instruction.toString() );
+        final long milliseconds = Math.max( TimeUnit.NANOSECONDS.toMillis( nanoseconds ), 1 );
+        String total = results.size() + " programs, " + faulted + " faulted, " + failed + " failed, " + cycles
+                + " cycles in " + milliseconds + " ms on " + threads + " threads (" + ( cycles * 1000 / milliseconds )
+                + " cycles/s)";
+        summary.append( MANIFEST_COMMENT ).append( Simulator.SPACE ).append( total ).append( Simulator.NEWLINE );
 
-        //Check if the instruction is our "last" instruction, if so, we need to change the processing, and also note the
-        // the current address.
-        if ( instruction instanceof Category1.Break ) {
-            isProcessingInstructions = false;
-            setMemoryStartAddress();
+        BufferedWriter output = Files.newBufferedWriter( outputDirectory.resolve( FILENAME_SUMMARY ), StandardCharsets.UTF_8 );
+        try {
+            output.write( summary.toString() );
+        } finally {
+            output.close();
         }
+        System.out.println( total );
+    }
 
-        //add the instruction to the chain.
-        addInstructionToChain( instructionCategory, instruction );
+    /**
+     * What happened to one program of the batch.
+     */
+    static class Result {
+        private Path input;
+        private Path outputDirectory;
+        private String status;
+        private String message;
+        private int cycles;
+        private long nanoseconds;
+
+        public Result( Path input, Path outputDirectory ) {
+            this.input = input;
+            this.outputDirectory = outputDirectory;
+        }
     }
+}
 
-    private void processDataLine( String dataLine ) {
+/**
+ * Checks the block engine against the interpreter, which is the reference. Random programs using every opcode are run
+ * on both in lock-step, one basic block at a time, and registers, data memory and the PC are compared after every
+ * block. The first program where they differ is shrunk to the fewest instructions that still make them differ and
+ * written out as an input file MIPSsim can run on its own.
+ */
+class DifferentialFuzzer {
+    static final String FILENAME_PREFIX = "fuzz-";
+    static final String FILENAME_SUFFIX = ".txt";
+
+    //registers the generated programs treat specially
+    private static final int ZERO = 0;          //never written, so it stays 0
+    private static final int SCALE = 29;        //holds 65536 while the registers are set up
+    private static final int SINK = 30;         //only written by padding, never read
+    private static final int BASE = 31;         //points into the middle of the data segment for every LW and SW
+    private static final int WRITABLE_REGISTERS = 29;   //R1 to R29
+    private static final int READABLE_REGISTERS = 30;   //R0 to R29
+
+    //generated program sizes
+    private static final int MINIMUM_BODY = 16;
+    private static final int MAXIMUM_BODY = 256;
+    private static final int MINIMUM_DATA = 8;
+    private static final int MAXIMUM_DATA = 64;
+    //out of every 100 body instructions, roughly how many change control flow and how many go to memory
+    private static final int PERCENT_CONTROL = 12;
+    private static final int PERCENT_MEMORY = 20;
+    private static final int PERCENT_FUSED = 8;        //sequences the block engine fuses, on top of the above
+    //operand pairs every logical operation is checked on: each of these against each other, then random ones
+    private static final int[] BOUNDARY_OPERANDS = { 0, 1, -1, 0x7FFF, 0x8000, 0xFFFF, 0x10000, Integer.MAX_VALUE,
+            Integer.MIN_VALUE, 0x55555555, 0xAAAAAAAA };
+    private static final int RANDOM_OPERAND_PAIRS = 1 << 12;
+
+    //encodings
+    private static final int CATEGORY_2 = 1 << 30;
+    private static final int CATEGORY_3 = 2 << 30;
+    private static final int OPCODE_J = 0;
+    private static final int OPCODE_BEQ = 2;
+    private static final int OPCODE_BGTZ = 4;
+    private static final int OPCODE_BREAK = 5;
+    private static final int OPCODE_SW = 6;
+    private static final int OPCODE_LW = 7;
+    private static final int OPCODE_MUL = 2;
+    private static final int OPCODE_AND = 3;            //AND, OR, XOR, NOR are the last four
+    private static final int CATEGORY_2_OPCODES = 7;    //ADD, SUB, MUL, AND, OR, XOR, NOR
+    private static final int OPCODE_ADDI = 0;
+    private static final int OPCODE_ANDI = 1;           //ANDI, ORI, XORI are the last three
+    private static final int OPCODE_ORI = 2;
+    private static final int CATEGORY_3_OPCODES = 4;    //ADDI, ANDI, ORI, XORI
+    private static final int BREAK = OPCODE_BREAK << 26;
+    //ADD R30, R0, R0. Takes the place of instructions while shrinking, without moving anything else.
+    private static final int PADDING = category2( 0, ZERO, ZERO, SINK );
 
-        //parse the number into an actual integer
-        int actualNumber = new BigInteger( dataLine, 2 ).intValue();
-        //add the integer to the appropriate place in memory
-        memory.add( actualNumber );
-        //add the integer to the disassembly output.
-        disassemblyOutput.append( actualNumber );
-    }
+    private int cycleLimit;
+    private Path outputDirectory;
+    private long cycles = 0;        //run on each engine, so far
 
     /**
-     * Increments the processing address to the next viable address.
+     * @param cycleLimit how many cycles each program may run for. Generated programs are allowed to loop forever.
+     * @param outputDirectory where the reproducer goes if the engines ever differ.
      */
-    private void incrementProcessingAddress() {
-        processingAddress += MEMORY_SPACING;
+    public DifferentialFuzzer( int cycleLimit, Path outputDirectory ) {
+        if ( cycleLimit < 1 ) {
+            throw new IllegalArgumentException( "Programs need at least one cycle: " + cycleLimit );
+        }
+        this.cycleLimit = cycleLimit;
+        this.outputDirectory = outputDirectory;
     }
 
     /**
-     * Sets the current start address based on the current processing address. Is expected to be called right after the
-     * break instruction is detected.
+     * Fuzzes programs seed, seed + 1, ... until one of them makes the engines differ.
+     * @return whether every program agreed.
      */
-    private void setMemoryStartAddress() {
-        memoryStartAddress = processingAddress + MEMORY_SPACING;
+    public boolean run( long seed, int programs ) throws IOException {
+        final long start = System.nanoTime();
+        cycles = 0;
+        String difference = checkLogicalOperations( seed );
+        if ( difference != null ) {
+            System.out.println( "Logical operations differ from their reference: " + difference );
+            return false;
+        }
+        for ( int a = 0; a != programs; ++a ) {
+            Program program = generate( seed + a );
+            Mismatch mismatch = compare( program.words, cycleLimit );
+            if ( mismatch != null ) {
+                report( seed + a, shrink( program, mismatch ) );
+                return false;
+            }
+        }
+        final long milliseconds = Math.max( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), 1 );
+        System.out.println( programs + " programs agreed, " + cycles + " cycles in " + milliseconds + " ms ("
+                + ( cycles * 1000 / milliseconds ) + " cycles/s)" );
+        return true;
     }
 
-    /* Simulation Methods */
+    /* Logical Operations */
 
     /**
-     * Runs processed simulation!
+     * Checks every logical instruction's native operation against referenceOperation(), the bit by bit version it
+     * replaced: on negative, zero and boundary operands, then on random ones from the seed.
+     * @return the first operation and operands they differ on, or null if they always agree.
      */
-    public void run() {
-        //get the system a jump start
-        current = start;
+    static String checkLogicalOperations( long seed ) {
+        List<CompareInstruction> operations = new ArrayList<CompareInstruction>();
+        for ( int opcode = OPCODE_AND; opcode != CATEGORY_2_OPCODES; ++opcode ) {
+            operations.add( decodeLogical( category2( opcode, 1, 2, 3 ) ) );
+        }
+        for ( int opcode = OPCODE_ANDI; opcode != CATEGORY_3_OPCODES; ++opcode ) {
+            operations.add( decodeLogical( category3( opcode, 1, 2, 0 ) ) );
+        }
+        Random random = new Random( seed );
+        for ( CompareInstruction operation : operations ) {
+            for ( int value1 : BOUNDARY_OPERANDS ) {
+                for ( int value2 : BOUNDARY_OPERANDS ) {
+                    String difference = checkLogicalOperation( operation, value1, value2 );
+                    if ( difference != null ) {
+                        return difference;
+                    }
+                }
+            }
+            for ( int a = 0; a != RANDOM_OPERAND_PAIRS; ++a ) {
+                String difference = checkLogicalOperation( operation, random.nextInt(), random.nextInt() );
+                if ( difference != null ) {
+                    return difference;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static CompareInstruction decodeLogical( int word ) {
+        return (CompareInstruction) InstructionCategory
+                .getInstructionCategory( Simulator.INSTRUCTION_START_ADDRESS, word ).getInstruction();
+    }
 
-        while ( current != null ) {
-            //set temp variable
-            InstructionNode working = current;
-            //move to next instruction
-            current = current.getNext();
-            //run instruction
-            working.run();
-            //output to simulation
-            appendSimulationStep( working.getAddress(), working.toString() );
-            ++cycle;
+    private static String checkLogicalOperation( CompareInstruction operation, int value1, int value2 ) {
+        int result = operation.performOperation( value1, value2 );
+        int reference = operation.referenceOperation( value1, value2 );
+        if ( result == reference ) {
+            return null;
         }
-        //we are done!
+        return operation + " on " + value1 + " and " + value2 + " gives " + result + ", the reference " + reference;
     }
 
-    /* Node Operations */
+    /* Generation */
 
     /**
-     * Does as title implies and adds an Instruction Object to the chain. Automatically
-     * sets up linking.
-     * @param instruction instruction to add to chain.
+     * @return a program that starts by putting random 32 bit values in every register, then runs random instructions.
+     * Branches and jumps only ever land on the body (or the BREAK), and every LW and SW stays in the data segment.
      */
-    private void addInstructionToChain( InstructionCategory category, Instruction instruction ) {
-        InstructionNode node = new InstructionNode( category, instruction );
-        if ( start == null ) {
-            start = node;
-            end = node;
+    static Program generate( long seed ) {
+        Random random = new Random( seed );
+        final int bodySize = MINIMUM_BODY + random.nextInt( MAXIMUM_BODY - MINIMUM_BODY + 1 );
+        final int half = ( MINIMUM_DATA + random.nextInt( MAXIMUM_DATA - MINIMUM_DATA + 1 ) ) / 2;
+
+        List<Integer> preamble = new ArrayList<Integer>();
+        preamble.add( category3( OPCODE_ADDI, ZERO, SCALE, 256 ) );
+        preamble.add( category2( OPCODE_MUL, SCALE, SCALE, SCALE ) );
+        for ( int reg = 1; reg != SCALE; ++reg ) {
+            //high half, shifted up by multiplying, then the low half
+            preamble.add( category3( OPCODE_ADDI, ZERO, reg, random.nextInt() ) );
+            preamble.add( category2( OPCODE_MUL, reg, SCALE, reg ) );
+            preamble.add( category3( OPCODE_ORI, reg, reg, random.nextInt() ) );
         }
-        else {
-            end.setNext( node );
-            end = node;
+        preamble.add( category3( OPCODE_ADDI, ZERO, SCALE, random.nextInt() ) );
+        final int bodyStart = preamble.size() + 1;     //BASE is set up last, once the data segment's address is known
+        final int instructionCount = bodyStart + bodySize + 1;
+        final int memoryStartAddress = getAddress( instructionCount );
+
+        int[] words = new int[instructionCount + half * 2];
+        for ( int a = 0; a != preamble.size(); ++a ) {
+            words[a] = preamble.get( a );
+        }
+        words[bodyStart - 1] =
+                category3( OPCODE_ADDI, ZERO, BASE, memoryStartAddress + half * Simulator.MEMORY_SPACING );
+        for ( int index = bodyStart; index != instructionCount - 1; ++index ) {
+            words[index] = randomInstruction( random, index, bodyStart, instructionCount - 1, half );
+            //now and then, turn it into the start of a sequence the block engine fuses
+            if ( random.nextInt( 100 ) < PERCENT_FUSED && index + 2 < instructionCount - 1 ) {
+                index = addFusedSequence( random, words, index, bodyStart, instructionCount - 1, half );
+            }
+        }
+        words[instructionCount - 1] = BREAK;
+        for ( int index = instructionCount; index != words.length; ++index ) {
+            words[index] = random.nextInt();
         }
+        return new Program( words, instructionCount );
     }
 
-    /* Output Operations */
+    private static int randomInstruction( Random random, int index, int bodyStart, int breakIndex, int half ) {
+        int kind = random.nextInt( 100 );
+        if ( kind < PERCENT_CONTROL ) {
+            //anywhere in the body, or the BREAK
+            int target = bodyStart + random.nextInt( breakIndex - bodyStart + 1 );
+            switch ( random.nextInt( 3 ) ) {
+                case 0:
+                    return ( OPCODE_J << 26 ) | ( getAddress( target ) >>> 2 );
+                case 1:
+                    return category1( OPCODE_BEQ, readable( random ), readable( random ), target - ( index + 1 ) );
+                default:
+                    return category1( OPCODE_BGTZ, readable( random ), 0, target - ( index + 1 ) );
+            }
+        }
+        if ( kind < PERCENT_CONTROL + PERCENT_MEMORY ) {
+            //BASE is half way through the data, so offsets go both ways
+            int offset = ( random.nextInt( half * 2 ) - half ) * Simulator.MEMORY_SPACING;
+            return random.nextBoolean()
+                    ? category1( OPCODE_LW, BASE, writable( random ), offset )
+                    : category1( OPCODE_SW, BASE, readable( random ), offset );
+        }
+        if ( random.nextBoolean() ) {
+            return category2( random.nextInt( CATEGORY_2_OPCODES ), readable( random ), readable( random ),
+                    writable( random ) );
+        }
+        return category3( random.nextInt( CATEGORY_3_OPCODES ), readable( random ), writable( random ),
+                random.nextInt() );
+    }
 
-    public String getDisassemblyOutput() {
-        return disassemblyOutput.toString();
+    /**
+     * Writes LW, ADD, SW (to the word it read, half the time) or ADDI, BGTZ starting at index.
+     * @return the index of the last instruction written.
+     */
+    private static int addFusedSequence( Random random, int[] words, int index, int bodyStart, int breakIndex,
+            int half ) {
+        if ( random.nextBoolean() ) {
+            int loaded = writable( random );
+            int sum = writable( random );
+            int offset = ( random.nextInt( half * 2 ) - half ) * Simulator.MEMORY_SPACING;
+            words[index] = category1( OPCODE_LW, BASE, loaded, offset );
+            words[index + 1] = category2( 0, loaded, readable( random ), sum );
+            //half of them write back to the word they read
+            if ( random.nextBoolean() ) {
+                offset = ( random.nextInt( half * 2 ) - half ) * Simulator.MEMORY_SPACING;
+            }
+            words[index + 2] = category1( OPCODE_SW, BASE, sum, offset );
+            return index + 2;
+        }
+        int counter = writable( random );
+        int target = bodyStart + random.nextInt( breakIndex - bodyStart + 1 );
+        words[index] = category3( OPCODE_ADDI, counter, counter, -1 - random.nextInt( 4 ) );
+        words[index + 1] = category1( OPCODE_BGTZ, counter, 0, target - ( index + 2 ) );
+        return index + 1;
     }
 
-    public String getSimulationOutput() {
-        return simulationOutput.toString();
+    private static int readable( Random random ) {
+        return random.nextInt( READABLE_REGISTERS );
     }
 
-    private void appendSimulationStep( final int executionAddress, final String instructionString ) {
-        simulationOutput.append( SIMULATION_SEPARATOR );
-        //Cycle:1	128	ADD R1, R0, R0
-        simulationOutput.append( SIMULATION_CYCLE_HEADER );
-        simulationOutput.append( cycle );
-        simulationOutput.append( TAB );
-        simulationOutput.append( executionAddress );
-        simulationOutput.append( TAB );
-        simulationOutput.append( instructionString );
-        simulationOutput.append( NEWLINE );
+    private static int writable( Random random ) {
+        return 1 + random.nextInt( WRITABLE_REGISTERS );
+    }
 
-        //blank line
-        simulationOutput.append( NEWLINE );
+    private static int category1( int opcode, int rs, int rt, int immediate ) {
+        return ( opcode << 26 ) | ( rs << 21 ) | ( rt << 16 ) | ( immediate & 0xFFFF );
+    }
 
-        //print registers
-        simulationOutput.append( SIMULATION_REGISTER_TITLE );
-        simulationOutput.append( NEWLINE );
-        for( int reg = 0, index = 0; reg != register.length; ++reg) {
-            int lineCount = (reg % IPR);
-            if ( lineCount == 0 ) {
-                simulationOutput.append( SIMULATION_REGISTER_HEADERS[index] );
-                simulationOutput.append( TAB );
-                ++index;
+    private static int category2( int opcode, int rs, int rt, int rd ) {
+        return CATEGORY_2 | ( rs << 25 ) | ( rt << 20 ) | ( opcode << 16 ) | ( rd << 11 );
+    }
+
+    private static int category3( int opcode, int rs, int rt, int immediate ) {
+        return CATEGORY_3 | ( rs << 25 ) | ( rt << 20 ) | ( opcode << 16 ) | ( immediate & 0xFFFF );
+    }
+
+    private static int getAddress( int index ) {
+        return Simulator.INSTRUCTION_START_ADDRESS + index * Simulator.MEMORY_SPACING;
+    }
+
+    /* Comparison */
+
+    private static DecodedProgram decode( int[] words ) {
+        ProgramDecoder decoder = new ProgramDecoder( null );
+        for ( int word : words ) {
+            decoder.processWord( word );
+        }
+        return decoder.build();
+    }
+
+    /**
+     * Runs the words on both engines, each block on the block engine followed by the same instructions on the
+     * interpreter.
+     * @return where they first differ, or null if they agree for the whole run.
+     */
+    private Mismatch compare( int[] words, int cycleLimit ) {
+        DecodedProgram program = decode( words );
+        Simulator reference = new Simulator();
+        reference.load( program );
+        Simulator candidate = new Simulator();
+        candidate.load( program );
+        //every pattern, including the ones that are off by default
+        candidate.setFusion( BasicBlock.FUSE_ALL );
+
+        while ( candidate.getCycleCount() < cycleLimit ) {
+            final int blockStart = candidate.getProgramCounter();
+            final int blockCycle = candidate.getCycleCount() + 1;
+            int ran = 0;
+            SimulationFault candidateFault = null;
+            try {
+                ran = candidate.stepBlock();
+            } catch ( SimulationFault fault ) {
+                candidateFault = fault;
             }
-            simulationOutput.append( register[reg] );
-            if( lineCount == (IPR - 1) ) {
-                simulationOutput.append( NEWLINE );
+            //the interpreter catches up, through the faulting instruction if there was one
+            final int target = ( candidateFault != null ) ? candidateFault.getCycle() : candidate.getCycleCount();
+            SimulationFault referenceFault = null;
+            try {
+                while ( reference.getCycleCount() < target && reference.stepInstruction() ) {
+                }
+            } catch ( SimulationFault fault ) {
+                referenceFault = fault;
             }
-            else {
-                simulationOutput.append( TAB );
+
+            String difference = findDifference( reference, candidate, referenceFault, candidateFault );
+            if ( difference != null ) {
+                cycles += reference.getCycleCount();
+                return new Mismatch( blockStart, blockCycle, Math.max( target, blockCycle ), difference );
+            }
+            if ( candidateFault != null || ran == 0 ) {
+                break;
             }
         }
+        cycles += reference.getCycleCount();
+        return null;
+    }
 
-        //blank line
-        simulationOutput.append( NEWLINE );
-
-        //print data
-        simulationOutput.append( SIMULATION_DATA_TITLE );
-        for ( int count = 0, address = memoryStartAddress; count != memory.size(); address += MEMORY_SPACING, ++count) {
-            if ( count % IPR == 0 ) {
-                simulationOutput.append( NEWLINE );
-                simulationOutput.append( address );
-                simulationOutput.append( COLON );
+    /**
+     * @return what differs between the two, or null if nothing does.
+     */
+    private static String findDifference( Simulator reference, Simulator candidate,
+            SimulationFault referenceFault, SimulationFault candidateFault ) {
+        if ( referenceFault != null || candidateFault != null ) {
+            String referenceOutcome = ( referenceFault == null ) ? "no fault" : referenceFault.getMessage();
+            String candidateOutcome = ( candidateFault == null ) ? "no fault" : candidateFault.getMessage();
+            if ( !referenceOutcome.equals( candidateOutcome ) ) {
+                return "the interpreter stopped with " + referenceOutcome + ", the block engine with "
+                        + candidateOutcome;
             }
-            simulationOutput.append( TAB );
-            simulationOutput.append( memory.get( count ) );
         }
-        simulationOutput.append( NEWLINE );
-        simulationOutput.append( NEWLINE );
+        if ( reference.getCycleCount() != candidate.getCycleCount() ) {
+            return "the interpreter ran " + reference.getCycleCount() + " cycles, the block engine "
+                    + candidate.getCycleCount();
+        }
+        if ( reference.getProgramCounter() != candidate.getProgramCounter() ) {
+            return "PC is " + reference.getProgramCounter() + " on the interpreter, "
+                    + candidate.getProgramCounter() + " on the block engine";
+        }
+        for ( int reg = 0; reg != Checkpoint.REGISTER_COUNT; ++reg ) {
+            if ( reference.getRegister( reg ) != candidate.getRegister( reg ) ) {
+                return "R" + reg + " is " + reference.getRegister( reg ) + " on the interpreter, "
+                        + candidate.getRegister( reg ) + " on the block engine";
+            }
+        }
+        for ( int a = 0, address = reference.getMemoryStartAddress(); a != reference.getMemorySize();
+                ++a, address += Simulator.MEMORY_SPACING ) {
+            if ( reference.getMemory( address ) != candidate.getMemory( address ) ) {
+                return "memory " + address + " is " + reference.getMemory( address ) + " on the interpreter, "
+                        + candidate.getMemory( address ) + " on the block engine";
+            }
+        }
+        return null;
     }
 
-    /* Callback Implementations! */
+    /* Reporting */
 
-    @Override
-    public int getRegister( int registerNumber ) {
-        return register[registerNumber];
+    /**
+     * Replaces instructions with padding, one at a time, keeping every replacement that still leaves the engines
+     * differing, until no single instruction can go.
+     */
+    private Program shrink( Program program, Mismatch mismatch ) {
+        int[] words = program.words.clone();
+        //nothing after the first difference matters
+        int limit = mismatch.lastCycle;
+        boolean shrunk = true;
+        while ( shrunk ) {
+            shrunk = false;
+            for ( int index = 0; index != program.instructionCount - 1; ++index ) {
+                final int original = words[index];
+                if ( original == PADDING ) {
+                    continue;
+                }
+                words[index] = PADDING;
+                Mismatch smaller = compare( words, limit );
+                if ( smaller != null ) {
+                    mismatch = smaller;
+                    limit = smaller.lastCycle;
+                    shrunk = true;
+                }
+                else {
+                    words[index] = original;
+                }
+            }
+        }
+        Program reproducer = new Program( words, program.instructionCount );
+        reproducer.mismatch = mismatch;
+        return reproducer;
     }
 
-    @Override
-    public void setRegister( int registerNumber, int value ) {
-        register[registerNumber] = value;
+    private void report( long seed, Program reproducer ) throws IOException {
+        Mismatch mismatch = reproducer.mismatch;
+        Files.createDirectories( outputDirectory );
+        Path file = outputDirectory.resolve( FILENAME_PREFIX + seed + FILENAME_SUFFIX );
+        StringBuilder input = new StringBuilder();
+        for ( int word : reproducer.words ) {
+            Simulator.appendBinaryWord( input, word );
+            input.append( Simulator.NEWLINE );
+        }
+        Files.write( file, input.toString().getBytes( StandardCharsets.US_ASCII ) );
+
+        System.out.println( "Engines differ on seed " + seed + " (--fuzz=1 --seed=" + seed
+                + ") in the block starting at " + mismatch.blockStart + " (cycles " + mismatch.firstCycle + " to "
+                + mismatch.lastCycle + "): " + mismatch.difference );
+        System.out.println( "Reproducer written to " + file + ". Without the padding (" + disassemble( PADDING )
+                + "):" );
+        InstructionNode[] instructions = decode( reproducer.words ).getInstructions();
+        for ( int index = 0; index != instructions.length; ++index ) {
+            if ( reproducer.words[index] != PADDING ) {
+                System.out.println( Simulator.TAB + Integer.toString( instructions[index].getAddress() ) + Simulator.TAB
+                        + instructions[index] );
+            }
+        }
     }
 
-    @Override
-    public int getMemory( int memoryAddress ) {
-        int index = getMemoryIndexFromAddress( memoryAddress );
-        return memory.get( index );
+    private static String disassemble( int word ) {
+        return InstructionCategory.getInstructionCategory( Simulator.INSTRUCTION_START_ADDRESS, word ).getInstruction()
+                .toString();
     }
 
-    @Override
-    public void setMemory( int memoryAddress, int value ) {
-        int index = getMemoryIndexFromAddress( memoryAddress );
-        memory.set( index, value );
+    /**
+     * A generated program: instructions (ending with the BREAK), then data.
+     */
+    static class Program {
+        private int[] words;
+        private int instructionCount;
+        private Mismatch mismatch;      //set on reproducers
+
+        Program( int[] words, int instructionCount ) {
+            this.words = words;
+            this.instructionCount = instructionCount;
+        }
     }
 
     /**
-     * Returns the appropriate index for any given memory address.
-     * @param memoryAddress memory address to be converted.
-     * @return the index of where that particular memory address is located.
+     * Where the engines first differed, as far as lock-step can tell: somewhere in one block.
      */
-    private int getMemoryIndexFromAddress( int memoryAddress ) {
+    static class Mismatch {
+        private int blockStart;
+        private int firstCycle;
+        private int lastCycle;
+        private String difference;
+
+        Mismatch( int blockStart, int firstCycle, int lastCycle, String difference ) {
+            this.blockStart = blockStart;
+            this.firstCycle = firstCycle;
+            this.lastCycle = lastCycle;
+            this.difference = difference;
+        }
+    }
+}
+
+/**
+ * Splits the command line into positional arguments and "--name=value" options. An option given without a value is
+ * read as "true".
+ */
+class CommandLine {
+    private static final String OPTION_PREFIX = "--";
+    private static final char OPTION_SEPARATOR = '=';
+
+    private ArrayList<String> arguments = new ArrayList<String>();
+    private HashMap<String, String> options = new HashMap<String, String>();
+
+    public CommandLine( String[] args ) {
+        for ( String arg : args ) {
+            if ( arg.startsWith( OPTION_PREFIX ) ) {
+                int separator = arg.indexOf( OPTION_SEPARATOR );
+                if ( separator < 0 ) {
+                    options.put( arg.substring( OPTION_PREFIX.length() ), Boolean.TRUE.toString() );
+                }
+                else {
+                    options.put( arg.substring( OPTION_PREFIX.length(), separator ), arg.substring( separator + 1 ) );
+                }
+            }
+            else {
+                arguments.add( arg );
+            }
+        }
+    }
+
+    public int getArgumentCount() {
+        return arguments.size();
+    }
+
+    public String getArgument( int index ) {
+        return arguments.get( index );
+    }
+
+    public boolean hasOption( String name ) {
+        return options.containsKey( name );
+    }
+
+    public String getOption( String name, String defaultValue ) {
+        String value = options.get( name );
+        return ( value == null ) ? defaultValue : value;
+    }
+}
+
+/**
+ * Feeds a program image into a ProgramDecoder, one word at a time. Files are memory-mapped and parsed straight out of the
+ * mapped bytes, so no String is created per line. Loaders keep parsing state between buffers, so use a new one for
+ * every image.
+ */
+abstract class ProgramLoader {
+    static final String FORMAT_TEXT = "text";
+    static final String FORMAT_BIG_ENDIAN = "big-endian";
+    static final String FORMAT_LITTLE_ENDIAN = "little-endian";
+
+    //largest region mapped at once. A multiple of the word size, so binary words never straddle two regions.
+    private static final long MAXIMUM_REGION_SIZE = Integer.MAX_VALUE & ~( Simulator.MEMORY_SPACING - 1 );
+
+    /**
+     * @param format "text" (lines of '0' and '1'), "big-endian" or "little-endian" (raw 4 byte words).
+     */
+    static ProgramLoader forFormat( String format ) {
+        if ( format.equals( FORMAT_TEXT ) ) {
+            return new Text();
+        }
+        else if ( format.equals( FORMAT_BIG_ENDIAN ) ) {
+            return new Binary( ByteOrder.BIG_ENDIAN );
+        }
+        else if ( format.equals( FORMAT_LITTLE_ENDIAN ) ) {
+            return new Binary( ByteOrder.LITTLE_ENDIAN );
+        }
+        throw new IllegalArgumentException( "Unknown input format: " + format );
+    }
+
+    /**
+     * Maps the whole file and loads it into the decoder.
+     */
+    public void load( Path path, ProgramDecoder decoder ) throws IOException {
+        FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+        try {
+            final long size = channel.size();
+            for ( long position = 0; position < size; ) {
+                long length = Math.min( size - position, MAXIMUM_REGION_SIZE );
+                MappedByteBuffer region = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+                load( region, decoder );
+                position += length;
+            }
+            finish( decoder );
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads every remaining byte of the buffer. May be called several times for one image.
+     */
+    public abstract void load( ByteBuffer buffer, ProgramDecoder decoder ) throws IOException;
+
+    /**
+     * Called once the whole image has been passed to load().
+     */
+    public abstract void finish( ProgramDecoder decoder ) throws IOException;
+
+    /* Implementations */
+
+    /**
+     * The assignment's format: one word per line, written as binary digits.
+     */
+    static class Text extends ProgramLoader {
+        private int word = 0;
+        private int digits = 0;
+        private long line = 1;
+
+        @Override
+        public void load( ByteBuffer buffer, ProgramDecoder decoder ) throws IOException {
+            for ( int a = buffer.position(), limit = buffer.limit(); a != limit; ++a ) {
+                byte character = buffer.get( a );
+                if ( character == '0' || character == '1' ) {
+                    word = ( word << 1 ) | ( character - '0' );
+                    ++digits;
+                }
+                else if ( character == Simulator.NEWLINE ) {
+                    endLine( decoder );
+                }
+                else if ( character != '\r' ) {
+                    throw new IOException( "Line " + line + ": unexpected character '" + (char) character + "'" );
+                }
+            }
+            buffer.position( buffer.limit() );
+        }
+
+        @Override
+        public void finish( ProgramDecoder decoder ) throws IOException {
+            //the last line does not need a newline
+            endLine( decoder );
+        }
+
+        /**
+         * Blank lines are skipped. Anything else must be a whole word, or the rest of the input would be read shifted.
+         */
+        private void endLine( ProgramDecoder decoder ) throws IOException {
+            if ( digits != 0 && digits != Integer.SIZE ) {
+                throw new IOException( "Line " + line + ": expected " + Integer.SIZE + " binary digits, found "
+                        + digits );
+            }
+            if ( digits != 0 ) {
+                decoder.processWord( word );
+            }
+            word = 0;
+            digits = 0;
+            ++line;
+        }
+    }
+
+    /**
+     * Raw 32 bit words, four bytes each, in the given byte order.
+     */
+    static class Binary extends ProgramLoader {
+        private ByteOrder order;
+
+        public Binary( ByteOrder order ) {
+            this.order = order;
+        }
+
+        @Override
+        public void load( ByteBuffer buffer, ProgramDecoder decoder ) throws IOException {
+            if ( buffer.remaining() % Simulator.MEMORY_SPACING != 0 ) {
+                throw new IOException( "Binary input is not a whole number of words: " + buffer.remaining() + " bytes" );
+            }
+            ByteBuffer words = buffer.duplicate().order( order );
+            while ( words.hasRemaining() ) {
+                decoder.processWord( words.getInt() );
+            }
+            buffer.position( buffer.limit() );
+        }
+
+        @Override
+        public void finish( ProgramDecoder decoder ) {
+        }
+    }
+}
+
+/**
+ * Turns the input, one word at a time, into a DecodedProgram. Everything that only matters while parsing lives here, so
+ * the program that comes out holds no parsing or machine state.
+ *
+ * Words are only collected as they come in. Every word's address follows from its position, so once the input is
+ * complete build() finds the BREAK that ends the instruction segment with a quick scan, then decodes and disassembles
+ * the whole image in chunks on a fork-join pool. The chunks' disassembly is stitched back together in order.
+ */
+class ProgramDecoder {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int CHUNK_SIZE = 1 << 14;     //words decoded by one task
+    private static final int BINARY_WORD_LENGTH = 32;
+    //the longest array, and so the longest String, most JVMs will allocate
+    private static final int MAXIMUM_DISASSEMBLY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private ForkJoinPool pool;
+
+    //what has been read so far
+    private int[] words = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    //lines whose text is not just the 32 digits of their word, by position. The disassembly repeats them as they were.
+    private HashMap<Integer, String> rawLines;
+
+    /**
+     * Decodes on the common fork-join pool.
+     */
+    public ProgramDecoder() {
+        this( ForkJoinPool.commonPool() );
+    }
+
+    /**
+     * @param pool where chunks are decoded, or null to decode everything on the thread calling build().
+     */
+    public ProgramDecoder( ForkJoinPool pool ) {
+        this.pool = pool;
+    }
+
+    /**
+     * This method takes in, one line at a time, the text file.
+     * @param rawBinaryLine
+     */
+    public void processLine( String rawBinaryLine ) {
+        //every line is a single 32 bit word, so parse it once and let the decoders work on the bits.
+        int word = Simulator.parseBinaryWord( rawBinaryLine );
+        if ( rawBinaryLine.length() != BINARY_WORD_LENGTH ) {
+            if ( rawLines == null ) {
+                rawLines = new HashMap<Integer, String>();
+            }
+            rawLines.put( size, rawBinaryLine );
+        }
+        processWord( word );
+    }
+
+    /**
+     * Same as processLine, for a line that has already been parsed into its word. The disassembly shows the word as
+     * 32 binary digits.
+     * @param word the next word of the input.
+     */
+    public void processWord( int word ) {
+        if ( size == words.length ) {
+            words = Arrays.copyOf( words, size * 2 );
+        }
+        words[size++] = word;
+    }
+
+    /**
+     * @return the index of the first BREAK, which is the last instruction, or -1 if there is none.
+     */
+    private int findBreak() {
+        for ( int index = 0; index != size; ++index ) {
+            if ( Category1.isBreak( words[index] ) ) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static int getAddress( int index ) {
+        return Simulator.INSTRUCTION_START_ADDRESS + index * Simulator.MEMORY_SPACING;
+    }
+
+    /**
+     * @return everything decoded so far, as an immutable program.
+     */
+    public DecodedProgram build() {
+        final int breakIndex = findBreak();
+        //with no BREAK, everything is an instruction and there is no data segment
+        final int instructionCount = ( breakIndex < 0 ) ? size : breakIndex + 1;
+        final int memoryStartAddress = ( breakIndex < 0 ) ? 0 : getAddress( breakIndex ) + Simulator.MEMORY_SPACING;
+
+        InstructionNode[] instructions = new InstructionNode[instructionCount];
+        String[] chunks = new String[( size + CHUNK_SIZE - 1 ) / CHUNK_SIZE];
+        DecodeTask task = new DecodeTask( instructions, chunks, 0, chunks.length );
+        if ( pool == null || chunks.length < 2 ) {
+            task.compute();
+        }
+        else {
+            pool.invoke( task );
+        }
+
+        long length = 0;
+        for ( String chunk : chunks ) {
+            length += chunk.length();
+        }
+        if ( length > MAXIMUM_DISASSEMBLY_LENGTH ) {
+            throw new IllegalStateException( "The disassembly of " + size + " words would take " + length
+                    + " characters, more than one String can hold" );
+        }
+        StringBuilder disassembly = new StringBuilder( (int) length );
+        for ( String chunk : chunks ) {
+            disassembly.append( chunk );
+        }
+        return new DecodedProgram(
+                instructions,
+                Arrays.copyOfRange( words, instructionCount, size ),
+                memoryStartAddress,
+                disassembly.toString(),
+                digest() );
+    }
+
+    /**
+     * @return the hash of every word read so far, instructions and data alike, in order.
+     */
+    private byte[] digest() {
+        MessageDigest digest = DecodedProgramCache.newDigest();
+        ByteBuffer bytes = ByteBuffer.allocate( Math.min( size, CHUNK_SIZE ) * Simulator.MEMORY_SPACING );
+        for ( int start = 0; start < size; start += CHUNK_SIZE ) {
+            int length = Math.min( size - start, CHUNK_SIZE );
+            bytes.clear();
+            bytes.asIntBuffer().put( words, start, length );
+            bytes.limit( length * Simulator.MEMORY_SPACING );
+            digest.update( bytes );
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Decodes a run of chunks, splitting it in half until there is only one chunk left.
+     */
+    private class DecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private InstructionNode[] instructions;
+        private String[] chunks;
+        private int firstChunk;
+        private int endChunk;
+
+        DecodeTask( InstructionNode[] instructions, String[] chunks, int firstChunk, int endChunk ) {
+            this.instructions = instructions;
+            this.chunks = chunks;
+            this.firstChunk = firstChunk;
+            this.endChunk = endChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if ( endChunk - firstChunk > 1 ) {
+                int middle = ( firstChunk + endChunk ) >>> 1;
+                invokeAll( new DecodeTask( instructions, chunks, firstChunk, middle ),
+                        new DecodeTask( instructions, chunks, middle, endChunk ) );
+                return;
+            }
+            for ( int chunk = firstChunk; chunk != endChunk; ++chunk ) {
+                chunks[chunk] = decodeChunk( instructions, chunk * CHUNK_SIZE, Math.min( size, ( chunk + 1 ) * CHUNK_SIZE ) );
+            }
+        }
+    }
+
+    /**
+     * Decodes the words in [start, end), storing the instructions among them.
+     * @return the disassembly of those words.
+     */
+    private String decodeChunk( InstructionNode[] instructions, int start, int end ) {
+        StringBuilder disassemblyOutput = new StringBuilder( ( end - start ) * 48 );
+        for ( int index = start; index != end; ++index ) {
+            final int word = words[index];
+            final int address = getAddress( index );
+
+            //append to disassembly
+            String rawBinaryLine = ( rawLines == null ) ? null : rawLines.get( index );
+            if ( rawBinaryLine != null ) {
+                disassemblyOutput.append( rawBinaryLine );
+            }
+            else {
+                Simulator.appendBinaryWord( disassemblyOutput, word );
+            }
+            disassemblyOutput.append( Simulator.TAB );
+            disassemblyOutput.append( address );
+            disassemblyOutput.append( Simulator.TAB );
+
+            //everything up to and including the BREAK is an instruction, everything after it data.
+            if ( index < instructions.length ) {
+                //the node renders the instruction's text once, right here.
+                InstructionCategory instructionCategory = InstructionCategory.getInstructionCategory( address, word );
+                InstructionNode node = new InstructionNode( instructionCategory, instructionCategory.getInstruction() );
+                disassemblyOutput.append( node.toString() );
+                instructions[index] = node;
+            }
+            else {
+                disassemblyOutput.append( word );
+            }
+            disassemblyOutput.append( Simulator.NEWLINE );
+        }
+        return disassemblyOutput.toString();
+    }
+}
+
+/**
+ * A fully decoded program: its instructions, the data segment it starts with and its disassembly. Nothing in here
+ * changes while a simulator runs it, so one DecodedProgram can be run by any number of simulators at once, each with
+ * its own registers and memory.
+ */
+class DecodedProgram {
+    private final InstructionNode[] instructions;   //indexed by Simulator.getInstructionIndexFromAddress()
+    private final int[] data;
+    private final int memoryStartAddress;
+    private final String disassembly;
+    private final byte[] digest;
+    //compiled lazily by whichever simulator gets there first, one array per set of fusion patterns. BasicBlock is
+    // immutable, so a race only costs a recompile.
+    private final BasicBlock[][] blocks = new BasicBlock[BasicBlock.FUSE_ALL + 1][];
+
+    DecodedProgram( InstructionNode[] instructions, int[] data, int memoryStartAddress, String disassembly,
+            byte[] digest ) {
+        this.instructions = instructions;
+        this.data = data;
+        this.memoryStartAddress = memoryStartAddress;
+        this.disassembly = disassembly;
+        this.digest = digest;
+    }
+
+    /**
+     * @return the instructions. Shared, so do not modify.
+     */
+    public InstructionNode[] getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return the data segment the program was decoded with. Shared, so do not modify.
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    public int getMemoryStartAddress() {
+        return memoryStartAddress;
+    }
+
+    public String getDisassembly() {
+        return disassembly;
+    }
+
+    /**
+     * @return the SHA-256 of the input's words, which tells programs apart. Shared, so do not modify.
+     */
+    public byte[] getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the basic block starting at the given instruction index, compiling it first if need be.
+     * @param fusion which patterns to fuse, as BasicBlock.FUSE_ bits.
+     */
+    public BasicBlock getBlock( int index, int fusion ) {
+        BasicBlock[] compiled = blocks[fusion];
+        if ( compiled == null ) {
+            compiled = new BasicBlock[instructions.length];
+            blocks[fusion] = compiled;
+        }
+        BasicBlock block = compiled[index];
+        if ( block == null ) {
+            block = BasicBlock.compile( instructions, index, fusion );
+            compiled[index] = block;
+        }
+        return block;
+    }
+}
+
+/**
+ * Keeps recently decoded programs around, keyed by a hash of the input's contents and its format, so running the same
+ * binary again skips decoding. The least recently used program is dropped once the cache is full. Safe to share
+ * between threads.
+ */
+class DecodedProgramCache {
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final long MAXIMUM_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final LinkedHashMap<String, DecodedProgram> programs;
+
+    public DecodedProgramCache( final int capacity ) {
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException( "Cache capacity must be at least 1: " + capacity );
+        }
+        //access order, so iteration (and eviction) starts with the least recently used program
+        programs = new LinkedHashMap<String, DecodedProgram>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, DecodedProgram> eldest ) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the decoded program for the given file, decoding it only if the same contents have not been seen lately.
+     */
+    public DecodedProgram get( Path path, String format ) throws IOException {
+        final String key = format + Simulator.COLON + hash( path );
+        DecodedProgram program;
+        synchronized ( programs ) {
+            program = programs.get( key );
+        }
+        if ( program != null ) {
+            return program;
+        }
+
+        //decode outside of the lock. Two threads may decode the same program at once; the first one stored wins.
+        ProgramDecoder decoder = new ProgramDecoder();
+        ProgramLoader.forFormat( format ).load( path, decoder );
+        program = decoder.build();
+        synchronized ( programs ) {
+            DecodedProgram existing = programs.get( key );
+            if ( existing != null ) {
+                return existing;
+            }
+            programs.put( key, program );
+        }
+        return program;
+    }
+
+    public int size() {
+        synchronized ( programs ) {
+            return programs.size();
+        }
+    }
+
+    /**
+     * @return a new instance of the hash inputs are keyed by. Decoded programs are fingerprinted with it as well.
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance( HASH_ALGORITHM );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static String hash( Path path ) throws IOException {
+        MessageDigest digest = newDigest();
+        FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+        try {
+            final long size = channel.size();
+            for ( long position = 0; position < size; ) {
+                long length = Math.min( size - position, MAXIMUM_REGION_SIZE );
+                digest.update( channel.map( FileChannel.MapMode.READ_ONLY, position, length ) );
+                position += length;
+            }
+        } finally {
+            channel.close();
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() ) {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+            hex.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+}
+
+/**
+ * Everything about a running machine that is not part of its program: the registers, the data memory, the program
+ * counter and the cycle count. A checkpoint can be written to disk part way through a run and loaded back into a
+ * simulator running the same program to carry on from there.
+ *
+ * On disk it is a flat run of big-endian ints: magic, version, the program's digest (eight ints), memory start
+ * address, program counter, cycle, the 32 registers, the data memory size and then the data memory itself. Both
+ * directions go through a bulk transfer between the int arrays and an NIO buffer, so nothing is copied a word at a
+ * time. A simulator writing checkpoints over and over passes the same buffer back in every time.
+ */
+class Checkpoint {
+    static final int MAGIC = 0x4D495043;    //"MIPC"
+    static final int VERSION = 2;
+    static final int REGISTER_COUNT = 32;
+    static final int DIGEST_LENGTH = 32;    //bytes of SHA-256
+    private static final int HEADER_WORDS = 5 + DIGEST_LENGTH / 4 + REGISTER_COUNT + 1;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final byte[] programDigest;     //only used to make sure a checkpoint goes back into the right program
+    private final int memoryStartAddress;
+    private final int programCounter;
+    private final int cycle;
+    private final int[] register;
+    private final int[] memory;
+
+    /**
+     * @param programDigest DecodedProgram.getDigest() of the program the machine is running.
+     */
+    public Checkpoint( byte[] programDigest, int memoryStartAddress, int programCounter, int cycle, int[] register,
+            int[] memory ) {
+        if ( register.length != REGISTER_COUNT ) {
+            throw new IllegalArgumentException( "A checkpoint holds exactly " + REGISTER_COUNT + " registers" );
+        }
+        if ( programDigest.length != DIGEST_LENGTH ) {
+            throw new IllegalArgumentException( "A program digest is " + DIGEST_LENGTH + " bytes" );
+        }
+        this.programDigest = programDigest;
+        this.memoryStartAddress = memoryStartAddress;
+        this.programCounter = programCounter;
+        this.cycle = cycle;
+        this.register = register;
+        this.memory = memory;
+    }
+
+    public byte[] getProgramDigest() {
+        return programDigest;
+    }
+
+    public int getMemoryStartAddress() {
+        return memoryStartAddress;
+    }
+
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    public int getCycle() {
+        return cycle;
+    }
+
+    public int[] getRegisters() {
+        return register;
+    }
+
+    public int[] getMemory() {
+        return memory;
+    }
+
+    /**
+     * Writes the checkpoint next to the given file first and then moves it into place, so a run that dies half way
+     * through writing never leaves a torn checkpoint behind. Waits for it to reach the disk.
+     */
+    public void write( Path path ) throws IOException {
+        write( path, null, true );
+    }
+
+    /**
+     * @param buffer what the last write returned, or null. Only replaced when the checkpoint has outgrown it.
+     * @param sync whether to wait for the checkpoint to reach the disk before it replaces the last one. Without it, a
+     * crash of the whole machine (not just the JVM) may lose the checkpoint.
+     * @return the buffer, for the next write.
+     */
+    public ByteBuffer write( Path path, ByteBuffer buffer, boolean sync ) throws IOException {
+        final int size = ( HEADER_WORDS + memory.length ) * 4;
+        if ( buffer == null || buffer.capacity() < size ) {
+            buffer = ByteBuffer.allocateDirect( size );
+        }
+        buffer.clear().limit( size );
+        buffer.putInt( MAGIC ).putInt( VERSION ).put( programDigest );
+        IntBuffer words = buffer.asIntBuffer();
+        buffer.rewind();
+        words.put( memoryStartAddress );
+        words.put( programCounter ).put( cycle );
+        words.put( register );
+        words.put( memory.length );
+        words.put( memory );
+
+        Path temporary = path.resolveSibling( path.getFileName() + TEMPORARY_SUFFIX );
+        FileChannel channel = FileChannel.open( temporary, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING );
+        try {
+            while ( buffer.hasRemaining() ) {
+                channel.write( buffer );
+            }
+            if ( sync ) {
+                channel.force( false );
+            }
+        } finally {
+            channel.close();
+        }
+        Files.move( temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        return buffer;
+    }
+
+    public static Checkpoint read( Path path ) throws IOException {
+        FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+        try {
+            final long size = channel.size();
+            if ( size < HEADER_WORDS * 4 || size % 4 != 0 ) {
+                throw new IOException( "Not a checkpoint: " + path );
+            }
+            ByteBuffer bytes = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+            if ( bytes.getInt() != MAGIC ) {
+                throw new IOException( "Not a checkpoint: " + path );
+            }
+            int version = bytes.getInt();
+            if ( version != VERSION ) {
+                throw new IOException( "Unsupported checkpoint version " + version + ": " + path );
+            }
+            byte[] programDigest = new byte[DIGEST_LENGTH];
+            bytes.get( programDigest );
+            IntBuffer words = bytes.asIntBuffer();
+            int memoryStartAddress = words.get();
+            int programCounter = words.get();
+            int cycle = words.get();
+            int[] register = new int[REGISTER_COUNT];
+            words.get( register );
+            int memorySize = words.get();
+            if ( memorySize < 0 || memorySize != words.remaining() ) {
+                throw new IOException( "Truncated checkpoint: " + path );
+            }
+            int[] memory = new int[memorySize];
+            words.get( memory );
+            return new Checkpoint( programDigest, memoryStartAddress, programCounter, cycle, register, memory );
+        } finally {
+            channel.close();
+        }
+    }
+}
+
+/**
+ * A compact stand-in for simulation.txt. Instead of every register and data word for every traced cycle, only the
+ * registers and data words that actually change are recorded, along with a marker for each traced cycle. A full copy
+ * of the machine (a keyframe) goes in every so many traced cycles, so a damaged or cut off trace can still be picked up
+ * again part way through. Simulator.replay() turns a delta trace back into the exact simulation.txt it stands for.
+ *
+ * The stream starts with the magic, version, data start address, data size and the text of every instruction, followed
+ * by a keyframe. After that it is a run of records, each starting with its tag byte. Cycles are stored as the distance
+ * from the last traced cycle and addresses as instruction indexes, both as variable length ints.
+ */
+class DeltaTrace {
+    static final int MAGIC = 0x4D495044;    //"MIPD"
+    static final int VERSION = 1;
+    static final int DEFAULT_KEYFRAME_INTERVAL = 1024;
+
+    //record tags
+    static final int RECORD_END = 0;
+    static final int RECORD_REGISTER = 1;
+    static final int RECORD_MEMORY = 2;
+    static final int RECORD_STEP = 3;
+    static final int RECORD_KEYFRAME = 4;
+
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Records a delta trace. The simulator reports every write and every traced cycle as they happen.
+     */
+    static class Output {
+        private DataOutputStream output;
+        private int keyframeInterval;
+        private int stepsSinceKeyframe = 0;
+        private int lastCycle = 0;
+
+        public Output( OutputStream output, int keyframeInterval ) {
+            if ( keyframeInterval < 1 ) {
+                throw new IllegalArgumentException( "Keyframe interval must be at least 1: " + keyframeInterval );
+            }
+            this.output = new DataOutputStream( output );
+            this.keyframeInterval = keyframeInterval;
+        }
+
+        public void writeHeader( int memoryStartAddress, InstructionNode[] instructions, int[] register, int[] memory, int memorySize ) throws IOException {
+            output.writeInt( MAGIC );
+            output.writeInt( VERSION );
+            output.writeInt( memoryStartAddress );
+            output.writeInt( memorySize );
+            output.writeInt( instructions.length );
+            for ( InstructionNode instruction : instructions ) {
+                output.writeUTF( instruction.toString() );
+            }
+            writeKeyframe( register, memory, memorySize );
+        }
+
+        public void writeRegister( int registerNumber, int value ) throws IOException {
+            output.writeByte( RECORD_REGISTER );
+            output.writeByte( registerNumber );
+            output.writeInt( value );
+        }
+
+        public void writeMemory( int index, int value ) throws IOException {
+            output.writeByte( RECORD_MEMORY );
+            writeVarInt( index );
+            output.writeInt( value );
+        }
+
+        /**
+         * Marks a traced cycle. Everything recorded up to this point has already happened by the end of it.
+         */
+        public void writeStep( int cycle, int executionAddress, int[] register, int[] memory, int memorySize ) throws IOException {
+            if ( ++stepsSinceKeyframe > keyframeInterval ) {
+                writeKeyframe( register, memory, memorySize );
+            }
+            output.writeByte( RECORD_STEP );
+            writeVarInt( cycle - lastCycle );
+            writeVarInt( Simulator.getInstructionIndexFromAddress( executionAddress ) );
+            lastCycle = cycle;
+        }
+
+        public void finish() throws IOException {
+            output.writeByte( RECORD_END );
+            output.flush();
+        }
+
+        private void writeKeyframe( int[] register, int[] memory, int memorySize ) throws IOException {
+            output.writeByte( RECORD_KEYFRAME );
+            for ( int value : register ) {
+                output.writeInt( value );
+            }
+            for ( int a = 0; a != memorySize; ++a ) {
+                output.writeInt( memory[a] );
+            }
+            stepsSinceKeyframe = 1;
+        }
+
+        private void writeVarInt( int value ) throws IOException {
+            while ( ( value & ~VARINT_MASK ) != 0 ) {
+                output.writeByte( ( value & VARINT_MASK ) | VARINT_MORE );
+                value >>>= 7;
+            }
+            output.writeByte( value );
+        }
+    }
+
+    /**
+     * Reads a delta trace back one record at a time.
+     */
+    static class Input {
+        private DataInputStream input;
+        private int memoryStartAddress;
+        private int memorySize;
+        private String[] instructions;
+
+        //the record that was just read
+        private int index;
+        private int value;
+        private int cycle = 0;
+
+        public Input( InputStream input ) throws IOException {
+            this.input = new DataInputStream( input );
+            if ( this.input.readInt() != MAGIC ) {
+                throw new IOException( "Not a delta trace" );
+            }
+            int version = this.input.readInt();
+            if ( version != VERSION ) {
+                throw new IOException( "Unsupported delta trace version " + version );
+            }
+            memoryStartAddress = this.input.readInt();
+            memorySize = this.input.readInt();
+            instructions = new String[this.input.readInt()];
+            for ( int a = 0; a != instructions.length; ++a ) {
+                instructions[a] = this.input.readUTF();
+            }
+        }
+
+        public int getMemoryStartAddress() {
+            return memoryStartAddress;
+        }
+
+        public int getMemorySize() {
+            return memorySize;
+        }
+
+        /**
+         * Reads the next record. A keyframe still has to be read with readKeyframe().
+         * @return the record's tag.
+         */
+        public int next() throws IOException {
+            int record = input.readUnsignedByte();
+            switch ( record ) {
+                case RECORD_REGISTER:
+                    index = input.readUnsignedByte();
+                    value = input.readInt();
+                    break;
+                case RECORD_MEMORY:
+                    index = readVarInt();
+                    value = input.readInt();
+                    break;
+                case RECORD_STEP:
+                    cycle += readVarInt();
+                    index = readVarInt();
+                    break;
+                case RECORD_END:
+                case RECORD_KEYFRAME:
+                    break;
+                default:
+                    throw new IOException( "Unknown delta trace record: " + record );
+            }
+            return record;
+        }
+
+        public void readKeyframe( int[] register, int[] memory ) throws IOException {
+            for ( int a = 0; a != register.length; ++a ) {
+                register[a] = input.readInt();
+            }
+            for ( int a = 0; a != memorySize; ++a ) {
+                memory[a] = input.readInt();
+            }
+        }
+
+        /**
+         * @return the register number or data index that was written, or the instruction index of a step.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int getCycle() {
+            return cycle;
+        }
+
+        public int getExecutionAddress() {
+            return Simulator.INSTRUCTION_START_ADDRESS + index * Simulator.MEMORY_SPACING;
+        }
+
+        public String getInstructionText() {
+            return instructions[index];
+        }
+
+        private int readVarInt() throws IOException {
+            int result = 0;
+            for ( int shift = 0; ; shift += 7 ) {
+                int b = input.readUnsignedByte();
+                result |= ( b & VARINT_MASK ) << shift;
+                if ( ( b & VARINT_MORE ) == 0 ) {
+                    return result;
+                }
+            }
+        }
+    }
+}
+
+/**
+ * One bit per register or memory word, set whenever it is written and cleared by whoever reads the changes. Lets the
+ * trace and checkpoints skip everything that has not changed since they last looked.
+ */
+class DirtyBitmap {
+    private static final int INDEX_SHIFT = 6;      //64 bits per long
+
+    private long[] bits;
+    private int size;
+
+    /**
+     * Starts with everything dirty, since nothing has been looked at yet.
+     */
+    public DirtyBitmap( int size ) {
+        this.size = size;
+        this.bits = new long[( size + Long.SIZE - 1 ) >>> INDEX_SHIFT];
+        markAll();
+    }
+
+    public void mark( int index ) {
+        bits[index >>> INDEX_SHIFT] |= 1L << index;
+    }
+
+    public void markAll() {
+        Arrays.fill( bits, -1L );
+    }
+
+    public void clear() {
+        Arrays.fill( bits, 0L );
+    }
+
+    /**
+     * @return whether anything in [from, to) is dirty.
+     */
+    public boolean isDirty( int from, int to ) {
+        int next = nextDirty( from );
+        return next >= 0 && next < to;
+    }
+
+    /**
+     * @return the first dirty index at or after from, or -1 if there is none.
+     */
+    public int nextDirty( int from ) {
+        if ( from >= size ) {
+            return -1;
+        }
+        int word = from >>> INDEX_SHIFT;
+        long remaining = bits[word] & ( -1L << from );
+        while ( remaining == 0 ) {
+            if ( ++word == bits.length ) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+        int index = ( word << INDEX_SHIFT ) + Long.numberOfTrailingZeros( remaining );
+        return ( index < size ) ? index : -1;
+    }
+}
+
+/**
+ * Where simulation.txt is built. Everything in a trace is ASCII, so text and numbers are written as bytes straight
+ * into one reusable buffer, which goes out to a channel (or, for callers that only have one, a Writer) once it has
+ * filled up. Nothing is allocated per cycle.
+ */
+class TraceBuffer {
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final String MIN_VALUE = Integer.toString( Integer.MIN_VALUE );   //the one int that cannot be negated
+    //"00" through "99", so numbers are written two digits at a time
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+    static {
+        for ( int a = 0; a != 100; ++a ) {
+            DIGIT_PAIRS[a * 2] = (byte) ( '0' + a / 10 );
+            DIGIT_PAIRS[a * 2 + 1] = (byte) ( '0' + a % 10 );
+        }
+    }
+
+    private byte[] buffer = new byte[FLUSH_SIZE * 2];
+    private ByteBuffer view = ByteBuffer.wrap( buffer );
+    private int position = 0;
+
+    //exactly one of these is set
+    private WritableByteChannel channel;
+    private Writer writer;
+    private char[] characters;
+
+    public TraceBuffer( WritableByteChannel channel ) {
+        this.channel = channel;
+    }
+
+    public TraceBuffer( Writer writer ) {
+        this.writer = writer;
+    }
+
+    /**
+     * @return how many bytes are waiting to be written. Marks where the next append starts.
+     */
+    public int position() {
+        return position;
+    }
+
+    public void append( char character ) {
+        ensureCapacity( 1 );
+        buffer[position++] = (byte) character;
+    }
+
+    /**
+     * @param text ASCII only.
+     */
+    public void append( String text ) {
+        final int length = text.length();
+        ensureCapacity( length );
+        for ( int a = 0; a != length; ++a ) {
+            buffer[position++] = (byte) text.charAt( a );
+        }
+    }
+
+    /**
+     * Same digits as Integer.toString(), without the String.
+     */
+    public void append( int value ) {
+        if ( value == Integer.MIN_VALUE ) {
+            append( MIN_VALUE );
+            return;
+        }
+        ensureCapacity( 11 );
+        if ( value < 0 ) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int end = position + countDigits( value );
+        int digit = end;
+        while ( value >= 100 ) {
+            int pair = ( value % 100 ) * 2;
+            value /= 100;
+            buffer[--digit] = DIGIT_PAIRS[pair + 1];
+            buffer[--digit] = DIGIT_PAIRS[pair];
+        }
+        if ( value >= 10 ) {
+            buffer[--digit] = DIGIT_PAIRS[value * 2 + 1];
+            buffer[--digit] = DIGIT_PAIRS[value * 2];
+        }
+        else {
+            buffer[--digit] = (byte) ( '0' + value );
+        }
+        position = end;
+    }
+
+    private static int countDigits( int value ) {
+        int digits = 1;
+        for ( int limit = 10; digits != 10 && value >= limit; limit *= 10 ) {
+            ++digits;
+        }
+        return digits;
+    }
+
+    public void append( byte[] bytes, int length ) {
+        ensureCapacity( length );
+        System.arraycopy( bytes, 0, buffer, position, length );
+        position += length;
+    }
+
+    /**
+     * Copies everything appended since start into the given array, which has to be big enough.
+     * @return how many bytes were copied.
+     */
+    public int copySince( int start, byte[] destination ) {
+        System.arraycopy( buffer, start, destination, 0, position - start );
+        return position - start;
+    }
+
+    private void ensureCapacity( int length ) {
+        if ( position + length > buffer.length ) {
+            buffer = Arrays.copyOf( buffer, Math.max( buffer.length * 2, position + length ) );
+            view = ByteBuffer.wrap( buffer );
+        }
+    }
+
+    /**
+     * Writes what has built up, if that is enough to be worth a write. Only call this between whole pieces of output,
+     * since nothing appended before it can be copied afterwards.
+     */
+    public void flushIfFull() throws IOException {
+        if ( position >= FLUSH_SIZE ) {
+            drain();
+        }
+    }
+
+    /**
+     * Writes everything appended so far, all the way through.
+     */
+    public void flush() throws IOException {
+        drain();
+        if ( writer != null ) {
+            writer.flush();
+        }
+    }
+
+    private void drain() throws IOException {
+        if ( channel != null ) {
+            view.clear().limit( position );
+            while ( view.hasRemaining() ) {
+                channel.write( view );
+            }
+        }
+        else {
+            if ( characters == null || characters.length < position ) {
+                characters = new char[buffer.length];
+            }
+            for ( int a = 0; a != position; ++a ) {
+                characters[a] = (char) buffer[a];
+            }
+            writer.write( characters, 0, position );
+        }
+        position = 0;
+    }
+}
+
+class Simulator implements SimulatorCallback, Machine {
+    public static final String FILENAME_DISASSEMBLY = "disassembly.txt";
+    public static final String FILENAME_SIMULATION = "simulation.txt";
+
+    public static final int IPR = 8;    //items per row (for output)
+    public static final char TAB = '\t';
+    public static final char NEWLINE = '\n';
+    public static final char POUND = '#';
+    public static final char COLON = ':';
+    public static final char R = 'R';
+    public static final char SPACE = ' ';
+    public static final String COMMA_SPACE = ", ";
+
+    private static final String SIMULATION_SEPARATOR = "--------------------" + NEWLINE;
+    private static final String SIMULATION_CYCLE_HEADER = "Cycle:";
+    private static final String[] SIMULATION_REGISTER_HEADERS = { "R00:", "R08:", "R16:", "R24:" };
+    private static final String SIMULATION_REGISTER_TITLE = "Registers";
+    private static final String SIMULATION_DATA_TITLE = "Data";
+    //the longest row: a header or address, then IPR tab separated numbers of up to 11 characters each, then a newline
+    private static final int SIMULATION_ROW_LENGTH = 16 + IPR * 12;
+
+
+    /**
+     * @param args the command line arguments
+     */
+
+    //MIPS Simulated Memory
+    public static final int MEMORY_SPACING = 4;
+    public static final int INSTRUCTION_START_ADDRESS = 128;
+    private static final int TIME_POLL_INTERVAL = 1 << 16;     //cycles between looking at the clock
+    private static final int NO_ADDRESS = -1;                   //never a program counter, which is always word aligned
+    private int[] register = new int[32];
+    private int[] memory;
+    private int memorySize = 0;     //number of words actually loaded into memory
+    //what has been written since the trace (and the last checkpoint) looked
+    private DirtyBitmap dirtyRegisters = new DirtyBitmap( 32 );
+    private DirtyBitmap dirtyMemory = new DirtyBitmap( 0 );
+    private DirtyBitmap dirtyCheckpointMemory = new DirtyBitmap( 0 );
+
+    //the program being run. It is shared, so everything that changes while running lives in this class instead.
+    private DecodedProgram program;
+    private ProgramDecoder decoder; //only used by processLine() and processWord()
+
+    //execution control variables.
+    private int cycle = 1;              //increases no matter what
+    //private int executionAddress = 128; //actually determines where we are in execution.
+    private int memoryStartAddress;
+    private int programCounter;
+    private boolean transferred;        //whether the instruction that just ran called jumpTo(), even to the next address
+
+    //output variables
+    private TraceBuffer simulationOutput;
+    //formatted rows, only redone once something in them is written. Lengths of -1 have not been formatted yet.
+    private byte[][] registerRows = new byte[0][];
+    private int[] registerRowLengths = new int[0];
+    private byte[][] dataRows = new byte[0][];
+    private int[] dataRowLengths = new int[0];
+    private TraceMode traceMode = new TraceMode.Full();
+    private boolean blockCompilation = true;
+    private int fusion = BasicBlock.FUSE_DEFAULT;
+    private DeltaTrace.Output deltaTrace;      //when set, traced cycles go here instead of the simulation writer
+    private ExecutionObserver[] observers = new ExecutionObserver[0];
+    private SimulationListener[] listeners = new SimulationListener[0];
+    private Profiler profiler;
+    private long[] profileReads;        //the profiler's counters, while running
+    private long[] profileWrites;
+
+    //checkpoint variables
+    private Path checkpointPath;
+    private int[] checkpointMemory;                     //memory as of the last checkpoint written
+    private ByteBuffer checkpointBuffer;                //what the last checkpoint was written from
+    private boolean checkpointSync = true;              //whether periodic checkpoints wait for the disk
+    private int checkpointInterval;                     //cycles between checkpoints, 0 for only when requested
+    private int nextCheckpointCycle = Integer.MAX_VALUE;
+    private volatile boolean checkpointRequested;       //set from other threads, e.g. a shutdown hook
+
+    //budget variables. The run loops only look at any of this (and at checkpoints) once cycle reaches nextPollCycle.
+    private int cycleBudget = 0;        //0 for no limit
+    private long timeBudget = 0;        //milliseconds, 0 for no limit
+    private long deadline;              //System.nanoTime() the time budget runs out at
+    private int nextPollCycle = Integer.MAX_VALUE;
+    private volatile boolean running;
+
+    /**
+     * Parses a line of '0' and '1' characters into the word it represents. The first character is the most significant
+     * bit, and only the last 32 characters survive, so a full 32 character line comes back as its two's complement value.
+     * @param binaryLine characters to parse.
+     * @return the parsed word.
+     */
+    static int parseBinaryWord( CharSequence binaryLine ) {
+        int word = 0;
+        for ( int a = 0, length = binaryLine.length(); a != length; ++a ) {
+            int bit = binaryLine.charAt( a ) - '0';
+            if ( ( bit & ~1 ) != 0 ) {
+                throw new NumberFormatException( "Not a binary line: \"" + binaryLine + "\"" );
+            }
+            word = ( word << 1 ) | bit;
+        }
+        return word;
+    }
+
+    /**
+     * Appends the word as 32 binary digits, most significant bit first.
+     */
+    static void appendBinaryWord( StringBuilder builder, int word ) {
+        for ( int bit = 31; bit >= 0; --bit ) {
+            builder.append( ( ( word >>> bit ) & 1 ) == 0 ? '0' : '1' );
+        }
+    }
+
+    /* Loading Methods */
+
+    /**
+     * This method takes in, one line at a time, the text file. The lines are decoded into a program which is loaded
+     * once the simulation starts.
+     * @param rawBinaryLine
+     */
+    public void processLine( String rawBinaryLine ) {
+        getDecoder().processLine( rawBinaryLine );
+    }
+
+    /**
+     * Same as processLine, for a line that has already been parsed into its word.
+     * @param word the next word of the input.
+     */
+    public void processWord( int word ) {
+        getDecoder().processWord( word );
+    }
+
+    private ProgramDecoder getDecoder() {
+        if ( program != null ) {
+            throw new IllegalStateException( "A program has already been loaded" );
+        }
+        if ( decoder == null ) {
+            decoder = new ProgramDecoder();
+        }
+        return decoder;
+    }
+
+    /**
+     * Decodes and loads a program image held in memory, such as one an embedding program generated itself.
+     * @param format one of the ProgramLoader formats: "text", "big-endian" or "little-endian".
+     */
+    @Override
+    public void load( byte[] image, String format ) throws IOException {
+        load( ByteBuffer.wrap( image ), format );
+    }
+
+    /**
+     * Same as load( byte[], String ). The buffer's position is left alone.
+     */
+    @Override
+    public void load( ByteBuffer image, String format ) throws IOException {
+        ProgramLoader loader = ProgramLoader.forFormat( format );
+        ProgramDecoder decoder = new ProgramDecoder();
+        loader.load( image.duplicate(), decoder );
+        loader.finish( decoder );
+        load( decoder.build() );
+    }
+
+    /**
+     * Decodes and loads a program file, the same way the command line does.
+     */
+    @Override
+    public void load( Path path, String format ) throws IOException {
+        ProgramDecoder decoder = new ProgramDecoder();
+        ProgramLoader.forFormat( format ).load( path, decoder );
+        load( decoder.build() );
+    }
+
+    /**
+     * Loads a decoded program, starting with the data segment it was decoded with.
+     */
+    public void load( DecodedProgram program ) {
+        load( program, program.getData() );
+    }
+
+    /**
+     * Loads a decoded program, starting with the given data segment instead of its own. The data is copied, so the
+     * same array can be handed to many simulators.
+     */
+    public void load( DecodedProgram program, int[] data ) {
+        if ( this.program != null ) {
+            throw new IllegalStateException( "A program has already been loaded" );
+        }
+        this.program = program;
+        this.memory = Arrays.copyOf( data, data.length );
+        this.memorySize = data.length;
+        this.memoryStartAddress = program.getMemoryStartAddress();
+        this.programCounter = INSTRUCTION_START_ADDRESS;
+        this.decoder = null;
+        resetDirty();
+        for ( ExecutionObserver observer : observers ) {
+            observer.dataSegmentLoaded( memoryStartAddress, memorySize );
+        }
+    }
+
+    /**
+     * Puts the machine back the way it was when the checkpoint was taken, so the next run carries on from there. The
+     * checkpoint has to come from the program that is loaded.
+     */
+    public void restore( Checkpoint checkpoint ) throws IOException {
+        ensureLoaded();
+        if ( !Arrays.equals( checkpoint.getProgramDigest(), program.getDigest() )
+                || checkpoint.getMemoryStartAddress() != memoryStartAddress ) {
+            throw new IOException( "Checkpoint was taken from a different program" );
+        }
+        System.arraycopy( checkpoint.getRegisters(), 0, register, 0, register.length );
+        memory = Arrays.copyOf( checkpoint.getMemory(), checkpoint.getMemory().length );
+        memorySize = memory.length;
+        programCounter = checkpoint.getProgramCounter();
+        cycle = checkpoint.getCycle();
+        resetDirty();
+        for ( ExecutionObserver observer : observers ) {
+            observer.dataSegmentLoaded( memoryStartAddress, memorySize );
+        }
+    }
+
+    /**
+     * @return a copy of everything needed to pick this run back up later.
+     */
+    public Checkpoint checkpoint() {
+        ensureLoaded();
+        return new Checkpoint( program.getDigest(), memoryStartAddress, programCounter, cycle, register.clone(),
+                Arrays.copyOf( memory, memorySize ) );
+    }
+
+    /**
+     * Forgets what has been written, for when the whole machine has just been replaced. Everything is dirty again, and
+     * the row texts are sized for the memory that is there now.
+     */
+    private void resetDirty() {
+        dirtyRegisters = new DirtyBitmap( register.length );
+        dirtyMemory = new DirtyBitmap( memorySize );
+        dirtyCheckpointMemory = new DirtyBitmap( memorySize );
+        registerRows = new byte[SIMULATION_REGISTER_HEADERS.length][SIMULATION_ROW_LENGTH];
+        registerRowLengths = new int[registerRows.length];
+        Arrays.fill( registerRowLengths, -1 );
+        dataRows = new byte[( memorySize + IPR - 1 ) / IPR][SIMULATION_ROW_LENGTH];
+        dataRowLengths = new int[dataRows.length];
+        Arrays.fill( dataRowLengths, -1 );
+        checkpointMemory = null;
+    }
+
+    /**
+     * Loads whatever processLine() and processWord() have decoded, if no program has been loaded yet.
+     */
+    private void ensureLoaded() {
+        if ( program == null ) {
+            load( ( decoder == null ) ? new ProgramDecoder().build() : decoder.build() );
+        }
+    }
+
+    /* Simulation Methods */
+
+    /**
+     * Runs processed simulation! Every cycle is written to the given writer as soon as it has executed, and the writer
+     * is flushed once the simulation stops, whether that is because of a BREAK or an error.
+     * @param simulationWriter where the cycle-by-cycle output goes.
+     */
+    public void run( Writer simulationWriter ) throws IOException {
+        run( new TraceBuffer( simulationWriter ) );
+    }
+
+    /**
+     * Same as run( Writer ), for output that goes straight to a channel, such as a FileChannel. The bytes are the
+     * same.
+     */
+    public void run( WritableByteChannel simulationChannel ) throws IOException {
+        run( new TraceBuffer( simulationChannel ) );
+    }
+
+    private void run( TraceBuffer simulationOutput ) throws IOException {
+        this.simulationOutput = simulationOutput;
+        running = true;
+        try {
+            runProgram();
+        } finally {
+            running = false;
+            simulationOutput.flush();
+        }
+    }
+
+    /**
+     * Sends traced cycles to the channel without running anything, for appending steps by hand.
+     */
+    void setSimulationChannel( WritableByteChannel simulationChannel ) {
+        this.simulationOutput = new TraceBuffer( simulationChannel );
+    }
+
+    /**
+     * Runs processed simulation, recording a delta trace instead of simulation.txt. Every write is recorded, traced
+     * cycle or not, so the skipped cycles are still accounted for when the trace is replayed. Delta traces always run
+     * on the interpreter, since compiled blocks write registers without going through the simulator.
+     * @param deltaTrace where the trace goes. It is finished once the simulation stops.
+     */
+    public void run( DeltaTrace.Output deltaTrace ) throws IOException {
+        ensureLoaded();
+        this.deltaTrace = deltaTrace;
+        running = true;
+        try {
+            deltaTrace.writeHeader( memoryStartAddress, program.getInstructions(), register, memory, memorySize );
+            runProgram();
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        } finally {
+            running = false;
+            this.deltaTrace = null;
+            deltaTrace.finish();
+        }
+    }
+
+    /**
+     * Rebuilds the simulation output a delta trace stands for, exactly as run() would have written it. Nothing needs
+     * to be loaded first; the trace holds everything.
+     */
+    public void replay( DeltaTrace.Input trace, Writer simulationWriter ) throws IOException {
+        replay( trace, new TraceBuffer( simulationWriter ) );
+    }
+
+    public void replay( DeltaTrace.Input trace, WritableByteChannel simulationChannel ) throws IOException {
+        replay( trace, new TraceBuffer( simulationChannel ) );
+    }
+
+    private void replay( DeltaTrace.Input trace, TraceBuffer simulationOutput ) throws IOException {
+        this.simulationOutput = simulationOutput;
+        memoryStartAddress = trace.getMemoryStartAddress();
+        memorySize = trace.getMemorySize();
+        memory = new int[memorySize];
+        resetDirty();
+        try {
+            for ( int record; ( record = trace.next() ) != DeltaTrace.RECORD_END; ) {
+                switch ( record ) {
+                    case DeltaTrace.RECORD_REGISTER:
+                        register[trace.getIndex()] = trace.getValue();
+                        dirtyRegisters.mark( trace.getIndex() );
+                        break;
+                    case DeltaTrace.RECORD_MEMORY:
+                        memory[trace.getIndex()] = trace.getValue();
+                        dirtyMemory.mark( trace.getIndex() );
+                        break;
+                    case DeltaTrace.RECORD_KEYFRAME:
+                        trace.readKeyframe( register, memory );
+                        dirtyRegisters.markAll();
+                        dirtyMemory.markAll();
+                        break;
+                    case DeltaTrace.RECORD_STEP:
+                        appendSimulationStep( trace.getCycle(), trace.getExecutionAddress(), trace.getInstructionText() );
+                        break;
+                }
+            }
+        } finally {
+            simulationOutput.flush();
+        }
+    }
+
+    private void runProgram() throws IOException {
+        ensureLoaded();
+        //every fetch (and every jump) is a single array lookup.
+        final InstructionNode[] instructions = program.getInstructions();
+        //the program counter starts at the first instruction, unless a checkpoint was restored.
+        if ( checkpointInterval > 0 ) {
+            nextCheckpointCycle = cycle + checkpointInterval;
+        }
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeBudget );
+        scheduleNextPoll();
+
+        //the profiler's counters are counted straight from the run loops
+        if ( profiler != null ) {
+            profiler.attach( instructions, memoryStartAddress, memorySize );
+            profileReads = profiler.getReads();
+            profileWrites = profiler.getWrites();
+        }
+
+        //nobody is looking at individual cycles, so run whole blocks at a time.
+        if ( blockCompilation && !traceMode.isCycleTraced() && deltaTrace == null && observers.length == 0
+                && listeners.length == 0 ) {
+            try {
+                runBlocks();
+            } finally {
+                //compiled blocks write registers straight into the array
+                dirtyRegisters.markAll();
+                if ( profiler != null ) {
+                    profiler.flushBlocks();
+                }
+            }
+            return;
+        }
+        runInstructions();
+    }
+
+    /**
+     * Runs the program one instruction at a time.
+     */
+    private void runInstructions() throws IOException {
+        final InstructionNode[] instructions = program.getInstructions();
+        final long[] executions = ( profiler != null ) ? profiler.getExecutions() : null;
+        final long[] taken = ( profiler != null ) ? profiler.getTaken() : null;
+        final boolean listening = listeners.length != 0;
+        InstructionNode last = null;
+        int index;
+        try {
+            while ( ( index = getInstructionIndexFromAddress( programCounter ) ) < instructions.length ) {
+                if ( index < 0 || programCounter % MEMORY_SPACING != 0 ) {
+                    throw locate( new InstructionFetchFault( programCounter ), programCounter );
+                }
+                //set temp variable
+                InstructionNode working = instructions[index];
+                //move to next instruction. Jumps and branches overwrite this while running.
+                programCounter += MEMORY_SPACING;
+                //run instruction
+                transferred = false;
+                try {
+                    working.run( this );
+                } catch ( SimulationFault fault ) {
+                    //the instruction never happened, so the program counter stays on it
+                    programCounter = working.getAddress();
+                    throw locate( fault, working.getAddress() );
+                }
+                for ( ExecutionObserver observer : observers ) {
+                    observer.instructionExecuted( working, programCounter, transferred );
+                }
+                if ( listening ) {
+                    notifyRetired( working );
+                }
+                if ( executions != null ) {
+                    ++executions[index];
+                    if ( transferred ) {
+                        ++taken[index];
+                    }
+                }
+                //output to simulation. The instruction is only formatted when this cycle is actually traced.
+                if ( traceMode.isTraced( cycle, working.getAddress() ) ) {
+                    appendSimulationStep( cycle, working.getAddress(), working.toString() );
+                }
+                last = working;
+                ++cycle;
+                if ( cycle >= nextPollCycle || checkpointRequested ) {
+                    poll();
+                }
+            }
+            checkFinished( last == null || programCounter == last.getAddress() + MEMORY_SPACING );
+        } catch ( SimulationFault fault ) {
+            traceFinalStep( ( last == null ) ? NO_ADDRESS : last.getAddress() );
+            throw fault;
+        }
+        //we are done!
+        traceFinalStep( ( last == null ) ? NO_ADDRESS : last.getAddress() );
+    }
+
+    /**
+     * Runs the program one basic block at a time. Blocks are compiled the first time any simulator running this program
+     * reaches their start address, and cached by that address.
+     */
+    private void runBlocks() throws IOException {
+        final InstructionNode[] instructions = program.getInstructions();
+        final long[] blockExecutions = ( profiler != null ) ? profiler.getBlockExecutions() : null;
+        final int[] blockLengths = ( profiler != null ) ? profiler.getBlockLengths() : null;
+        final long[] taken = ( profiler != null ) ? profiler.getTaken() : null;
+        BasicBlock block = null;
+        int lastAddress = NO_ADDRESS;       //the last instruction that ran, for the final trace
+        int index;
+        try {
+            while ( ( index = getInstructionIndexFromAddress( programCounter ) ) < instructions.length ) {
+                if ( index < 0 || programCounter % MEMORY_SPACING != 0 ) {
+                    throw locate( new InstructionFetchFault( programCounter ), programCounter );
+                }
+                block = program.getBlock( index, fusion );
+                try {
+                    programCounter = block.execute( register, this );
+                } catch ( SimulationFault fault ) {
+                    int retired = stopBlock( fault, index );
+                    if ( retired != 0 ) {
+                        lastAddress = fault.getProgramCounter() - MEMORY_SPACING;
+                        if ( profiler != null ) {
+                            //the block never finished, so what did run is counted one instruction at a time
+                            final long[] executions = profiler.getExecutions();
+                            for ( int a = index; a != index + retired; ++a ) {
+                                ++executions[a];
+                            }
+                        }
+                    }
+                    throw fault;
+                }
+                cycle += block.getLength();
+                lastAddress = block.getFallThroughAddress() - MEMORY_SPACING;
+                if ( blockExecutions != null ) {
+                    ++blockExecutions[index];
+                    blockLengths[index] = block.getLength();
+                    //only the last instruction in a block can send control anywhere else
+                    if ( block.endsWithTransfer( register ) ) {
+                        ++taken[index + block.getLength() - 1];
+                    }
+                }
+                //blocks never stop part way, so checkpoints and budgets land on the first block boundary past them
+                if ( cycle >= nextPollCycle || checkpointRequested ) {
+                    poll();
+                }
+            }
+            checkFinished( block == null || programCounter == block.getFallThroughAddress() );
+        } catch ( SimulationFault fault ) {
+            traceFinalStep( lastAddress );
+            throw fault;
+        }
+        //we are done!
+        traceFinalStep( lastAddress );
+    }
+
+    /**
+     * Runs the next instruction on the interpreter. Observers and listeners are told about it, but nothing is traced or
+     * profiled, and budgets and checkpoints are not looked at.
+     * @return whether there was an instruction to run, false once the program has finished.
+     */
+    boolean stepInstruction() {
+        ensureLoaded();
+        final InstructionNode[] instructions = program.getInstructions();
+        int index = getInstructionIndexFromAddress( programCounter );
+        if ( index >= instructions.length ) {
+            checkFinished( true );
+            return false;
+        }
+        if ( index < 0 || programCounter % MEMORY_SPACING != 0 ) {
+            throw locate( new InstructionFetchFault( programCounter ), programCounter );
+        }
+        InstructionNode working = instructions[index];
+        programCounter += MEMORY_SPACING;
+        transferred = false;
+        try {
+            working.run( this );
+        } catch ( SimulationFault fault ) {
+            programCounter = working.getAddress();
+            throw locate( fault, working.getAddress() );
+        }
+        for ( ExecutionObserver observer : observers ) {
+            observer.instructionExecuted( working, programCounter, transferred );
+        }
+        if ( listeners.length != 0 ) {
+            notifyRetired( working );
+        }
+        ++cycle;
+        //a step has no next fetch to catch control sent out of the program, so it is caught here
+        if ( getInstructionIndexFromAddress( programCounter ) >= instructions.length ) {
+            checkFinished( programCounter == working.getAddress() + MEMORY_SPACING );
+        }
+        return true;
+    }
+
+    /**
+     * Same as stepInstruction(), for the whole basic block at the program counter, run on the block engine.
+     * @return how many instructions ran, 0 once the program has finished.
+     */
+    int stepBlock() {
+        ensureLoaded();
+        int index = getInstructionIndexFromAddress( programCounter );
+        if ( index >= program.getInstructions().length ) {
+            checkFinished( true );
+            return 0;
+        }
+        if ( index < 0 || programCounter % MEMORY_SPACING != 0 ) {
+            throw locate( new InstructionFetchFault( programCounter ), programCounter );
+        }
+        BasicBlock block = program.getBlock( index, fusion );
+        try {
+            programCounter = block.execute( register, this );
+        } catch ( SimulationFault fault ) {
+            stopBlock( fault, index );
+            throw fault;
+        } finally {
+            dirtyRegisters.markAll();
+        }
+        cycle += block.getLength();
+        if ( getInstructionIndexFromAddress( programCounter ) >= program.getInstructions().length ) {
+            checkFinished( programCounter == block.getFallThroughAddress() );
+        }
+        return block.getLength();
+    }
+
+    /**
+     * Tells the listeners the instruction has run in the current cycle, and where control went if it was a branch or
+     * a jump.
+     */
+    private void notifyRetired( InstructionNode working ) {
+        Instruction instruction = working.getInstruction();
+        boolean transfer = instruction.isConditionalBranch() || instruction instanceof Category1.UnconditionalJump;
+        for ( SimulationListener listener : listeners ) {
+            if ( transfer ) {
+                listener.branchResolved( working, transferred, programCounter );
+            }
+            listener.instructionRetired( working, cycle );
+        }
+    }
+
+    /* Embedding Methods. These drive the machine directly instead of through run(): nothing is traced or profiled, and
+     * budgets and checkpoints are left to the caller. Whole blocks are used wherever they cannot overshoot. */
+
+    /**
+     * Runs up to count more instructions.
+     * @return how many ran, fewer than count only once the program has finished.
+     */
+    @Override
+    public int step( int count ) {
+        return advance( count, NO_ADDRESS );
+    }
+
+    /**
+     * Runs until the given cycle has run, or the program finishes.
+     * @return whether the cycle was reached.
+     */
+    @Override
+    public boolean runUntilCycle( int cycle ) {
+        ensureLoaded();
+        advance( cycle - getCycleCount(), NO_ADDRESS );
+        return getCycleCount() >= cycle;
+    }
+
+    /**
+     * Runs until the program counter reaches the address, the program finishes or maxCycles more cycles have run,
+     * whichever comes first. Nothing runs if the program counter is already there.
+     * @return whether the address was reached.
+     */
+    @Override
+    public boolean runUntilAddress( int address, int maxCycles ) {
+        advance( maxCycles, address );
+        return programCounter == address;
+    }
+
+    /**
+     * @return whether the program has run its BREAK (or otherwise left the end of the instruction segment).
+     */
+    @Override
+    public boolean isFinished() {
+        ensureLoaded();
+        return programCounter == getEndAddress();
+    }
+
+    /**
+     * Runs until count more instructions have run, the program counter reaches stopAddress or the program finishes.
+     * @return how many instructions ran.
+     */
+    private int advance( int count, int stopAddress ) {
+        ensureLoaded();
+        final InstructionNode[] instructions = program.getInstructions();
+        final boolean blocks = blockCompilation && observers.length == 0 && listeners.length == 0;
+        int ran = 0;
+        while ( ran < count && programCounter != stopAddress ) {
+            int index = getInstructionIndexFromAddress( programCounter );
+            if ( blocks && index >= 0 && index < instructions.length ) {
+                //blocks never stop part way, so one only runs if it cannot go past the count or the address
+                BasicBlock block = program.getBlock( index, fusion );
+                boolean passesStop = stopAddress > programCounter && stopAddress < block.getFallThroughAddress();
+                if ( block.getLength() <= count - ran && !passesStop ) {
+                    ran += stepBlock();
+                    continue;
+                }
+            }
+            if ( !stepInstruction() ) {
+                break;
+            }
+            ++ran;
+        }
+        return ran;
+    }
+
+    /**
+     * Leaves the machine where the interpreter would have after an instruction in a block faulted: the cycles of the
+     * instructions before it are counted, and the program counter stays on the faulting one.
+     * @param index the index of the block's first instruction.
+     * @return how many of the block's instructions ran.
+     */
+    private int stopBlock( SimulationFault fault, int index ) {
+        //the block knows which of its instructions faulted; everything before that one has run
+        int retired = getInstructionIndexFromAddress( fault.getProgramCounter() ) - index;
+        cycle += retired;
+        programCounter = fault.getProgramCounter();
+        fault.setCycle( cycle );
+        return retired;
+    }
+
+    /**
+     * Writes the final state, for trace modes that only want that, as of the last instruction that completed. A run
+     * that faulted shows the state just before the fault.
+     * @param lastAddress the address of that instruction, or NO_ADDRESS if none ran.
+     */
+    private void traceFinalStep( int lastAddress ) throws IOException {
+        if ( traceMode.isFinalTraced() && lastAddress != NO_ADDRESS ) {
+            //compiled blocks write registers straight into the array
+            dirtyRegisters.markAll();
+            InstructionNode last = program.getInstructions()[getInstructionIndexFromAddress( lastAddress )];
+            appendSimulationStep( cycle - 1, lastAddress, last.toString() );
+        }
+    }
+
+    /**
+     * Called once the program counter has left the end of the instruction segment. Only falling through the last
+     * instruction, which is the BREAK, ends a run; control sent past it, into the data segment, is a fetch fault.
+     * @param fellThrough whether the program counter got there from the instruction before it.
+     */
+    private void checkFinished( boolean fellThrough ) {
+        if ( !fellThrough || programCounter != getEndAddress() ) {
+            throw locate( new InstructionFetchFault( programCounter ), programCounter );
+        }
+    }
+
+    /**
+     * @return the address just past the last instruction, where falling through the BREAK leaves the program counter.
+     */
+    private int getEndAddress() {
+        return INSTRUCTION_START_ADDRESS + program.getInstructions().length * MEMORY_SPACING;
+    }
+
+    /**
+     * Fills in where a fault happened, in the cycle that is currently running.
+     */
+    private SimulationFault locate( SimulationFault fault, int programCounter ) {
+        fault.setProgramCounter( programCounter );
+        fault.setCycle( cycle );
+        return fault;
+    }
+
+    /**
+     * Checks the budgets and writes any checkpoint that is due.
+     * @throws BudgetExceededFault if the program is still running but out of cycles or time.
+     */
+    private void poll() throws IOException {
+        if ( cycle >= nextCheckpointCycle || checkpointRequested ) {
+            if ( checkpointPath != null ) {
+                writeCheckpoint();
+            }
+            if ( checkpointInterval > 0 ) {
+                nextCheckpointCycle = cycle + checkpointInterval;
+            }
+            checkpointRequested = false;
+        }
+        //a program that has just finished is not over its budget
+        if ( getInstructionIndexFromAddress( programCounter ) < program.getInstructions().length ) {
+            if ( cycleBudget > 0 && cycle > cycleBudget ) {
+                throw locate( new BudgetExceededFault( "Cycle budget of " + cycleBudget + " used up" ), programCounter );
+            }
+            if ( timeBudget > 0 && System.nanoTime() - deadline > 0 ) {
+                throw locate( new BudgetExceededFault( "Time budget of " + timeBudget + " ms used up" ), programCounter );
+            }
+        }
+        scheduleNextPoll();
+    }
+
+    /**
+     * Writes a checkpoint of where the run is now. Only the words written since the last one are copied.
+     */
+    private void writeCheckpoint() throws IOException {
+        if ( checkpointMemory == null ) {
+            checkpointMemory = new int[memorySize];
+        }
+        for ( int index = dirtyCheckpointMemory.nextDirty( 0 ); index >= 0; index = dirtyCheckpointMemory.nextDirty( index + 1 ) ) {
+            checkpointMemory[index] = memory[index];
+        }
+        dirtyCheckpointMemory.clear();
+        //the checkpoint only lives until it is written, so it can share the copy. Requested ones are the last of a run.
+        Checkpoint checkpoint = new Checkpoint( program.getDigest(), memoryStartAddress, programCounter, cycle,
+                register.clone(), checkpointMemory );
+        checkpointBuffer = checkpoint.write( checkpointPath, checkpointBuffer, checkpointSync || checkpointRequested );
+    }
+
+    private void scheduleNextPoll() {
+        nextPollCycle = nextCheckpointCycle;
+        if ( cycleBudget > 0 && cycleBudget < Integer.MAX_VALUE ) {
+            nextPollCycle = Math.min( nextPollCycle, cycleBudget + 1 );
+        }
+        if ( timeBudget > 0 ) {
+            nextPollCycle = Math.min( nextPollCycle, cycle + TIME_POLL_INTERVAL );
+        }
+    }
+
+    /**
+     * Returns the index into the program array for any given instruction address.
+     * @param instructionAddress instruction address to be converted.
+     * @return the index of the instruction located at that address.
+     */
+    static int getInstructionIndexFromAddress( int instructionAddress ) {
+        return ( instructionAddress - INSTRUCTION_START_ADDRESS ) / MEMORY_SPACING;
+    }
+
+    /* Output Operations */
+
+    /**
+     * @return how many cycles have run so far. After a fault, that is every instruction before the faulting one, on
+     * either engine.
+     */
+    @Override
+    public int getCycleCount() {
+        return cycle - 1;
+    }
+
+    /**
+     * @return the address of the next instruction to run. After a fault, that is the address the fault names.
+     */
+    @Override
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    @Override
+    public int getMemoryStartAddress() {
+        return memoryStartAddress;
+    }
+
+    /**
+     * @return how many words of data memory there are.
+     */
+    @Override
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * @return a copy of all 32 registers.
+     */
+    @Override
+    public int[] getRegisters() {
+        return register.clone();
+    }
+
+    /**
+     * @return a copy of data memory, starting at getMemoryStartAddress().
+     */
+    @Override
+    public int[] getData() {
+        ensureLoaded();
+        return Arrays.copyOf( memory, memorySize );
+    }
+
+    /**
+     * Reads a data word from outside the program. Unlike getMemory(), observers, listeners and the profiler do not
+     * count it as an access.
+     */
+    @Override
+    public int readMemory( int memoryAddress ) {
+        ensureLoaded();
+        return memory[getMemoryIndexFromAddress( memoryAddress )];
+    }
+
+    /**
+     * Writes a data word from outside the program, without it counting as an access.
+     */
+    @Override
+    public void writeMemory( int memoryAddress, int value ) {
+        ensureLoaded();
+        int index = getMemoryIndexFromAddress( memoryAddress );
+        memory[index] = value;
+        dirtyMemory.mark( index );
+        dirtyCheckpointMemory.mark( index );
+    }
+
+    @Override
+    public String getDisassemblyOutput() {
+        ensureLoaded();
+        return program.getDisassembly();
+    }
+
+    public void setTraceMode( TraceMode traceMode ) {
+        this.traceMode = traceMode;
+    }
+
+    /**
+     * @param blockCompilation whether runs that do not trace individual cycles may compile the program into basic
+     * blocks. When false, every instruction is run on its own.
+     */
+    @Override
+    public void setBlockCompilation( boolean blockCompilation ) {
+        this.blockCompilation = blockCompilation;
+    }
+
+    /**
+     * @param fusion which patterns of adjacent instructions compiled blocks fuse into one operation, as
+     * BasicBlock.FUSE_ bits. Fusing never changes results, only how fast blocks run.
+     */
+    public void setFusion( int fusion ) {
+        if ( ( fusion & ~BasicBlock.FUSE_ALL ) != 0 ) {
+            throw new IllegalArgumentException( "Unknown fusion patterns: " + fusion );
+        }
+        this.fusion = fusion;
+    }
+
+    /**
+     * Adds an observer that sees every instruction this simulator runs. Simulators with observers always use the
+     * interpreter.
+     */
+    public void addObserver( ExecutionObserver observer ) {
+        observers = Arrays.copyOf( observers, observers.length + 1 );
+        observers[observers.length - 1] = observer;
+        if ( program != null ) {
+            observer.dataSegmentLoaded( memoryStartAddress, memorySize );
+        }
+    }
+
+    public ExecutionObserver[] getObservers() {
+        return observers.clone();
+    }
+
+    /**
+     * Adds a listener that hears about every instruction, memory write and branch. Like observers, listeners keep the
+     * simulator on the interpreter.
+     */
+    public void addListener( SimulationListener listener ) {
+        listeners = Arrays.copyOf( listeners, listeners.length + 1 );
+        listeners[listeners.length - 1] = listener;
+    }
+
+    @Override
+    public void addListener( final MachineListener listener ) {
+        addListener( new SimulationListener() {
+            @Override
+            public void instructionRetired( InstructionNode instruction, int cycle ) {
+                listener.instructionRetired( instruction.getAddress(), instruction.toString(), cycle );
+            }
+
+            @Override
+            public void memoryWritten( int address, int value ) {
+                listener.memoryWritten( address, value );
+            }
+
+            @Override
+            public void branchResolved( InstructionNode branch, boolean taken, int nextAddress ) {
+                listener.branchResolved( branch.getAddress(), taken, nextAddress );
+            }
+        } );
+    }
+
+    /**
+     * @param profiler counts executions, branches and memory accesses while running. Unlike observers, a profiler
+     * does not keep the simulator off the block engine.
+     */
+    public void setProfiler( Profiler profiler ) {
+        this.profiler = profiler;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @param checkpointPath where checkpoints are written. Each one replaces the last.
+     * @param checkpointInterval how many cycles go by between checkpoints, or 0 to only write one when requested.
+     */
+    public void setCheckpoint( Path checkpointPath, int checkpointInterval ) {
+        if ( checkpointInterval < 0 ) {
+            throw new IllegalArgumentException( "Checkpoint interval cannot be negative: " + checkpointInterval );
+        }
+        this.checkpointPath = checkpointPath;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @param checkpointSync whether periodic checkpoints wait until they are on disk. Requested checkpoints always do.
+     */
+    public void setCheckpointSync( boolean checkpointSync ) {
+        this.checkpointSync = checkpointSync;
+    }
+
+    /**
+     * @param cycleBudget how many cycles a run may take before it is stopped with a BudgetExceededFault, or 0 for no
+     * limit.
+     * @param timeBudget how many milliseconds a run may take, or 0 for no limit. The clock is only looked at every so
+     * many cycles.
+     */
+    public void setBudget( int cycleBudget, long timeBudget ) {
+        if ( cycleBudget < 0 || timeBudget < 0 ) {
+            throw new IllegalArgumentException( "Budgets cannot be negative" );
+        }
+        this.cycleBudget = cycleBudget;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Asks a running simulation to write a checkpoint once the current instruction (or block) is done. Safe to call
+     * from any thread.
+     */
+    public void requestCheckpoint() {
+        checkpointRequested = true;
+    }
+
+    /**
+     * @return whether a checkpoint has been requested but not written yet.
+     */
+    public boolean isCheckpointPending() {
+        return checkpointRequested;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void appendSimulationStep( final int cycle, final int executionAddress, final String instructionString ) throws IOException {
+        if ( deltaTrace != null ) {
+            deltaTrace.writeStep( cycle, executionAddress, register, memory, memorySize );
+            return;
+        }
+        simulationOutput.append( SIMULATION_SEPARATOR );
+        //Cycle:1	128	ADD R1, R0, R0
+        simulationOutput.append( SIMULATION_CYCLE_HEADER );
+        simulationOutput.append( cycle );
+        simulationOutput.append( TAB );
+        simulationOutput.append( executionAddress );
+        simulationOutput.append( TAB );
+        simulationOutput.append( instructionString );
+        simulationOutput.append( NEWLINE );
+
+        //blank line
+        simulationOutput.append( NEWLINE );
+
+        //print registers. Rows nothing has been written to since the last traced cycle look just like they did then.
+        simulationOutput.append( SIMULATION_REGISTER_TITLE );
+        simulationOutput.append( NEWLINE );
+        for ( int row = 0; row != registerRows.length; ++row ) {
+            if ( registerRowLengths[row] < 0 || dirtyRegisters.isDirty( row * IPR, ( row + 1 ) * IPR ) ) {
+                int start = simulationOutput.position();
+                appendRegisterRow( row );
+                registerRowLengths[row] = simulationOutput.copySince( start, registerRows[row] );
+            }
+            else {
+                simulationOutput.append( registerRows[row], registerRowLengths[row] );
+            }
+        }
+        dirtyRegisters.clear();
+
+        //blank line
+        simulationOutput.append( NEWLINE );
+
+        //print data
+        simulationOutput.append( SIMULATION_DATA_TITLE );
+        for ( int row = 0; row != dataRows.length; ++row ) {
+            if ( dataRowLengths[row] < 0 || dirtyMemory.isDirty( row * IPR, ( row + 1 ) * IPR ) ) {
+                int start = simulationOutput.position();
+                appendDataRow( row );
+                dataRowLengths[row] = simulationOutput.copySince( start, dataRows[row] );
+            }
+            else {
+                simulationOutput.append( dataRows[row], dataRowLengths[row] );
+            }
+        }
+        dirtyMemory.clear();
+        simulationOutput.append( NEWLINE );
+        simulationOutput.append( NEWLINE );
+
+        simulationOutput.flushIfFull();
+    }
+
+    /**
+     * Appends the row of eight registers, with its header, as it appears in simulation.txt.
+     */
+    private void appendRegisterRow( int row ) {
+        simulationOutput.append( SIMULATION_REGISTER_HEADERS[row] );
+        for ( int reg = row * IPR, end = reg + IPR; reg != end; ++reg ) {
+            simulationOutput.append( TAB );
+            simulationOutput.append( register[reg] );
+        }
+        simulationOutput.append( NEWLINE );
+    }
+
+    /**
+     * Appends the row of (up to) eight data words, starting with the line break before its address.
+     */
+    private void appendDataRow( int row ) {
+        simulationOutput.append( NEWLINE );
+        simulationOutput.append( memoryStartAddress + row * IPR * MEMORY_SPACING );
+        simulationOutput.append( COLON );
+        for ( int count = row * IPR, end = Math.min( memorySize, count + IPR ); count != end; ++count ) {
+            simulationOutput.append( TAB );
+            simulationOutput.append( memory[count] );
+        }
+    }
+
+    /* Callback Implementations! */
+
+    @Override
+    public int getRegister( int registerNumber ) {
+        checkRegisterNumber( registerNumber );
+        return register[registerNumber];
+    }
+
+    @Override
+    public void setRegister( int registerNumber, int value ) {
+        checkRegisterNumber( registerNumber );
+        if ( deltaTrace != null && register[registerNumber] != value ) {
+            try {
+                deltaTrace.writeRegister( registerNumber, value );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+        register[registerNumber] = value;
+        dirtyRegisters.mark( registerNumber );
+    }
+
+    private void checkRegisterNumber( int registerNumber ) {
+        if ( registerNumber < 0 || registerNumber >= register.length ) {
+            throw new IllegalArgumentException( "No register R" + registerNumber + ", only R0 to R"
+                    + ( register.length - 1 ) );
+        }
+    }
+
+    @Override
+    public int getMemory( int memoryAddress ) {
+        int index = getMemoryIndexFromAddress( memoryAddress );
+        for ( ExecutionObserver observer : observers ) {
+            observer.memoryAccessed( memoryAddress, false );
+        }
+        if ( profileReads != null ) {
+            ++profileReads[index];
+        }
+        return memory[index];
+    }
+
+    @Override
+    public void setMemory( int memoryAddress, int value ) {
+        int index = getMemoryIndexFromAddress( memoryAddress );
+        for ( ExecutionObserver observer : observers ) {
+            observer.memoryAccessed( memoryAddress, true );
+        }
+        if ( profileWrites != null ) {
+            ++profileWrites[index];
+        }
+        if ( deltaTrace != null && memory[index] != value ) {
+            try {
+                deltaTrace.writeMemory( index, value );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+        memory[index] = value;
+        dirtyMemory.mark( index );
+        dirtyCheckpointMemory.mark( index );
+        for ( SimulationListener listener : listeners ) {
+            listener.memoryWritten( memoryAddress, value );
+        }
+    }
+
+    /* Memory access for fused blocks. Blocks never run with observers or a delta trace, so neither is told. */
+
+    /**
+     * @return the index of the word at the address, checked once for a load and a store to the same word.
+     */
+    int getMemoryIndex( int memoryAddress ) {
+        return getMemoryIndexFromAddress( memoryAddress );
+    }
+
+    int loadMemoryIndex( int index ) {
+        if ( profileReads != null ) {
+            ++profileReads[index];
+        }
+        return memory[index];
+    }
+
+    void storeMemoryIndex( int index, int value ) {
+        if ( profileWrites != null ) {
+            ++profileWrites[index];
+        }
+        memory[index] = value;
+        dirtyMemory.mark( index );
+        dirtyCheckpointMemory.mark( index );
+    }
+
+    /**
+     * Returns the appropriate index for any given memory address.
+     * @param memoryAddress memory address to be converted.
+     * @return the index of where that particular memory address is located.
+     * @throws MemoryAccessException if the address is not word aligned or falls outside of the data segment.
+     */
+    private int getMemoryIndexFromAddress( int memoryAddress ) {
         int index = memoryAddress;
         //subtract the difference from when the memory starts
         index -= memoryStartAddress;
+        if ( index % MEMORY_SPACING != 0 ) {
+            throw new MemoryAccessException( memoryAddress, "is not word aligned" );
+        }
         //divide by MEMORY_SPACING to get a raw index.
         index /= MEMORY_SPACING;
+        if ( index < 0 || index >= memorySize ) {
+            throw new MemoryAccessException( memoryAddress, "is outside of the data segment" );
+        }
+
+        return index;
+    }
+
+    @Override
+    public void jumpTo( int instructionAddress ) {
+        //the run loop fetches by address, so all we need to do is point it somewhere else.
+        programCounter = instructionAddress;
+        transferred = true;
+    }
+
+}
+/**
+ * A run of straight-line instructions, ending with a J, BEQ, BGTZ or BREAK (or the end of the program), compiled into
+ * one unit. Every instruction becomes four ints (operation, then up to three operands), and execute() runs them all in
+ * a single loop straight against the register file, instead of going through InstructionNode, Instruction and
+ * SimulatorCallback for each one.
+ */
+class BasicBlock {
+    /* Operations */
+    static final int ADD = 0;
+    static final int SUB = 1;
+    static final int MUL = 2;
+    static final int AND = 3;
+    static final int OR = 4;
+    static final int XOR = 5;
+    static final int NOR = 6;
+    static final int ADDI = 7;
+    static final int ANDI = 8;
+    static final int ORI = 9;
+    static final int XORI = 10;
+    static final int LW = 11;
+    static final int SW = 12;
+    static final int J = 13;
+    static final int BEQ = 14;
+    static final int BGTZ = 15;
+    static final int BREAK = 16;
+    static final int ILLEGAL = 17;
+
+    /* Fused operations. A fused operation replaces only the operation of the first instruction it covers; every
+       instruction keeps its own four ints, so slots still map to addresses (and faults to the right PC). */
+    static final int ADDI_BGTZ = 18;    //ADDI, then BGTZ: a loop counter and the branch back to the loop head
+    static final int LW_ADD = 19;       //LW, then ADD
+    static final int LW_ADD_SW = 20;    //LW, ADD, then SW: read, modify, write back
+    static final int LW_ADD_SW_SAME = 21;   //LW_ADD_SW where the SW goes back to the word the LW read
+
+    /* Fusion patterns, one bit each */
+    static final int FUSE_NONE = 0;
+    static final int FUSE_ADDI_BGTZ = 1;
+    static final int FUSE_LW_ADD = 1 << 1;
+    static final int FUSE_LW_ADD_SW = 1 << 2;
+    static final int FUSE_ALL = FUSE_ADDI_BGTZ | FUSE_LW_ADD | FUSE_LW_ADD_SW;
+    //only lw-add-sw saves work (one address check instead of two); the pairs stay opt-in until FusionBenchmark shows
+    // them beating none
+    static final int FUSE_DEFAULT = FUSE_LW_ADD_SW;
+    static final String FUSION_DEFAULT = "lw-add-sw";
+    static final String FUSION_ALL = "all";
+    static final String FUSION_NONE = "none";
+    private static final String[] FUSION_NAMES = { "addi-bgtz", "lw-add", "lw-add-sw" };
+
+    private static final int FIELDS = 4;    //ints per compiled instruction
+
+    private final int startAddress;
+    private final int length;               //number of instructions
+    private final int fallThroughAddress;   //where execution continues when the block does not jump
+    private final int[] code;
+
+    /**
+     * Compiles the block that starts at the given index of the program.
+     * @param fusion which patterns of adjacent instructions to fuse, as FUSE_ bits.
+     */
+    static BasicBlock compile( InstructionNode[] program, int startIndex, int fusion ) {
+        Builder builder = new Builder();
+        int index = startIndex;
+        while ( index < program.length ) {
+            Instruction instruction = program[index++].getInstruction();
+            instruction.compile( builder );
+            if ( instruction.endsBasicBlock() ) {
+                break;
+            }
+        }
+        fuse( builder.code, builder.size, fusion );
+        return new BasicBlock( program[startIndex].getAddress(), builder );
+    }
+
+    /**
+     * Replaces the first operation of every pattern found with its fused operation. Triples are matched before the
+     * pairs they start with, and an instruction is only ever part of one fused operation.
+     */
+    private static void fuse( int[] code, int size, int fusion ) {
+        for ( int a = 0; a < size; a += FIELDS ) {
+            if ( ( fusion & FUSE_LW_ADD_SW ) != 0 && matches( code, size, a, LW, ADD, SW ) ) {
+                //the same base and offset, with nothing in between changing the base, is the same word
+                final int base = code[a + 2];
+                boolean same = base == code[a + 2 * FIELDS + 2] && code[a + 3] == code[a + 2 * FIELDS + 3]
+                        && code[a + 1] != base && code[a + FIELDS + 1] != base;
+                code[a] = same ? LW_ADD_SW_SAME : LW_ADD_SW;
+                a += 2 * FIELDS;
+            }
+            else if ( ( fusion & FUSE_LW_ADD ) != 0 && matches( code, size, a, LW, ADD ) ) {
+                code[a] = LW_ADD;
+                a += FIELDS;
+            }
+            else if ( ( fusion & FUSE_ADDI_BGTZ ) != 0 && matches( code, size, a, ADDI, BGTZ ) ) {
+                code[a] = ADDI_BGTZ;
+                a += FIELDS;
+            }
+        }
+    }
+
+    private static boolean matches( int[] code, int size, int start, int... operations ) {
+        if ( start + operations.length * FIELDS > size ) {
+            return false;
+        }
+        for ( int a = 0; a != operations.length; ++a ) {
+            if ( code[start + a * FIELDS] != operations[a] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param patterns "all", "none", or a comma separated list of pattern names (addi-bgtz, lw-add, lw-add-sw).
+     * @return the patterns as FUSE_ bits.
+     */
+    static int parseFusion( String patterns ) {
+        if ( patterns.equals( FUSION_ALL ) ) {
+            return FUSE_ALL;
+        }
+        if ( patterns.equals( FUSION_NONE ) ) {
+            return FUSE_NONE;
+        }
+        int fusion = FUSE_NONE;
+        for ( String name : patterns.split( "," ) ) {
+            int bit = Arrays.asList( FUSION_NAMES ).indexOf( name.trim() );
+            if ( bit < 0 ) {
+                throw new IllegalArgumentException( "Unknown fusion pattern: " + name );
+            }
+            fusion |= 1 << bit;
+        }
+        return fusion;
+    }
+
+    private BasicBlock( int startAddress, Builder builder ) {
+        this.startAddress = startAddress;
+        this.length = builder.size / FIELDS;
+        this.fallThroughAddress = startAddress + length * Simulator.MEMORY_SPACING;
+        this.code = Arrays.copyOf( builder.code, builder.size );
+    }
+
+    public int getStartAddress() {
+        return startAddress;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getFallThroughAddress() {
+        return fallThroughAddress;
+    }
+
+    /**
+     * @return whether the last instruction sent control somewhere itself when the block ran: a J, or a BEQ or BGTZ
+     * whose condition held. Branches are always last and write no register, so the register file execute() left
+     * behind is the one the branch saw, and a taken branch to the next instruction is still told apart.
+     */
+    public boolean endsWithTransfer( int[] register ) {
+        final int last = code.length - FIELDS;
+        if ( last < 0 ) {
+            return false;
+        }
+        switch ( code[last] ) {
+            case J:
+                return true;
+            case BEQ:
+                return register[code[last + 1]] == register[code[last + 2]];
+            case BGTZ:
+                return register[code[last + 1]] > 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Runs every instruction in the block.
+     * @param register the register file, read and written directly.
+     * @param memory where LW and SW go.
+     * @return the address of the next instruction to run.
+     */
+    public int execute( final int[] register, final Simulator memory ) {
+        final int[] code = this.code;
+        int a = 0;
+        try {
+            for ( ; a != code.length; a += FIELDS ) {
+                final int first = code[a + 1];
+                final int second = code[a + 2];
+                final int third = code[a + 3];
+                switch ( code[a] ) {
+                    case ADD:
+                        register[first] = register[second] + register[third];
+                        break;
+                    case SUB:
+                        register[first] = register[second] - register[third];
+                        break;
+                    case MUL:
+                        register[first] = register[second] * register[third];
+                        break;
+                    case AND:
+                        register[first] = register[second] & register[third];
+                        break;
+                    case OR:
+                        register[first] = register[second] | register[third];
+                        break;
+                    case XOR:
+                        register[first] = register[second] ^ register[third];
+                        break;
+                    case NOR:
+                        register[first] = ~( register[second] | register[third] );
+                        break;
+                    case ADDI:
+                        register[first] = register[second] + third;
+                        break;
+                    case ANDI:
+                        register[first] = register[second] & third;
+                        break;
+                    case ORI:
+                        register[first] = register[second] | third;
+                        break;
+                    case XORI:
+                        register[first] = register[second] ^ third;
+                        break;
+                    case LW:
+                        register[first] = memory.getMemory( register[second] + third );
+                        break;
+                    case SW:
+                        memory.setMemory( register[second] + third, register[first] );
+                        break;
+                    case J:
+                        return third;
+                    case BEQ:
+                        if ( register[first] == register[second] ) {
+                            return third;
+                        }
+                        break;
+                    case BGTZ:
+                        if ( register[first] > 0 ) {
+                            return third;
+                        }
+                        break;
+                    case BREAK:
+                        break;
+                    case ILLEGAL:
+                        throw new IllegalInstructionFault( third );
+                    //fused operations move a past everything but their last instruction as they go, so a fault is
+                    // still pinned on the instruction that caused it.
+                    case ADDI_BGTZ:
+                        register[first] = register[second] + third;
+                        a += FIELDS;
+                        if ( register[code[a + 1]] > 0 ) {
+                            return code[a + 3];
+                        }
+                        break;
+                    case LW_ADD:
+                        register[first] = memory.getMemory( register[second] + third );
+                        a += FIELDS;
+                        register[code[a + 1]] = register[code[a + 2]] + register[code[a + 3]];
+                        break;
+                    case LW_ADD_SW:
+                        register[first] = memory.getMemory( register[second] + third );
+                        register[code[a + 5]] = register[code[a + 6]] + register[code[a + 7]];
+                        a += 2 * FIELDS;
+                        memory.setMemory( register[code[a + 2]] + code[a + 3], register[code[a + 1]] );
+                        break;
+                    case LW_ADD_SW_SAME: {
+                        //if the LW gets past the address check, so does the SW
+                        final int index = memory.getMemoryIndex( register[second] + third );
+                        register[first] = memory.loadMemoryIndex( index );
+                        register[code[a + 5]] = register[code[a + 6]] + register[code[a + 7]];
+                        a += 2 * FIELDS;
+                        memory.storeMemoryIndex( index, register[code[a + 1]] );
+                        break;
+                    }
+                }
+            }
+        } catch ( SimulationFault fault ) {
+            fault.setProgramCounter( startAddress + ( a / FIELDS ) * Simulator.MEMORY_SPACING );
+            throw fault;
+        }
+        return fallThroughAddress;
+    }
+
+    /**
+     * Collects compiled instructions. Instructions add themselves through Instruction.compile().
+     */
+    static class Builder {
+        private int[] code = new int[FIELDS * 16];
+        private int size = 0;
+
+        public void add( int operation, int first, int second, int third ) {
+            if ( size == code.length ) {
+                code = Arrays.copyOf( code, size * 2 );
+            }
+            code[size++] = operation;
+            code[size++] = first;
+            code[size++] = second;
+            code[size++] = third;
+        }
+    }
+}
+
+/**
+ * Hears about a simulation as it runs, for programs that embed the simulator. Every method does nothing unless it is
+ * overridden. Listeners are called straight from the interpreter, so a simulator with any listeners never compiles
+ * blocks.
+ */
+abstract class SimulationListener {
+    /**
+     * Called after every instruction has run, once its memoryWritten() or branchResolved() call is done.
+     * @param cycle the cycle the instruction ran in.
+     */
+    public void instructionRetired( InstructionNode instruction, int cycle ) {
+    }
+
+    /**
+     * Called for every SW, after the word has been written.
+     */
+    public void memoryWritten( int address, int value ) {
+    }
+
+    /**
+     * Called after every BEQ, BGTZ and J.
+     * @param taken whether the branch's condition held, even if it only went to the next instruction. A J is always
+     * taken.
+     * @param nextAddress where execution goes next.
+     */
+    public void branchResolved( InstructionNode branch, boolean taken, int nextAddress ) {
+    }
+}
+
+/**
+ * Watches a simulation from the side, one executed instruction at a time, and writes what it saw to a report once the
+ * run is over. Observers only ever see the interpreter, so a simulator with any observers never compiles blocks.
+ */
+abstract class ExecutionObserver {
+    /**
+     * Called after every instruction has run.
+     * @param instruction the instruction that just ran.
+     * @param nextAddress where execution goes next.
+     * @param transferred whether the instruction sent control to nextAddress itself: every J, and every BEQ or BGTZ
+     * whose condition held. A taken branch to the following address counts too.
+     */
+    public abstract void instructionExecuted( InstructionNode instruction, int nextAddress, boolean transferred );
+
+    /**
+     * Called for every LW and SW, before memory is read or written.
+     */
+    public void memoryAccessed( int address, boolean write ) {
+    }
+
+    /**
+     * Called once the simulator knows where its data segment is, and again whenever a restored checkpoint replaces
+     * it. Every address memoryAccessed() is called with falls inside it.
+     * @param memorySize in words.
+     */
+    public void dataSegmentLoaded( int memoryStartAddress, int memorySize ) {
+    }
+
+    /**
+     * @return the name of the file the report is written to, next to simulation.txt.
+     */
+    public abstract String getReportName();
+
+    public abstract void writeReport( Writer output ) throws IOException;
+
+    /**
+     * Writes the report, and anything else the observer has to say, into the directory.
+     */
+    public void writeReports( Path directory ) throws IOException {
+        BufferedWriter output = new BufferedWriter( new FileWriter( directory.resolve( getReportName() ).toFile() ) );
+        try {
+            writeReport( output );
+        } finally {
+            output.close();
+        }
+    }
+}
+
+/**
+ * Times the instructions a simulation runs on a classic in-order five stage pipeline (IF, ID, EX, MEM, WB). The
+ * simulation itself still runs one instruction at a time; this only works out the cycle each instruction would have
+ * entered each stage, given the instructions around it.
+ *
+ * Stages have no buffers between them, so an instruction cannot enter a stage until the one ahead of it has moved on.
+ * With forwarding, a result can be used by the next EX as soon as it comes out of EX (out of MEM for LW, which is the
+ * load-use stall). Without it, a register has to be written back before the instruction reading it can get through ID.
+ * Branches are predicted not taken and resolved in EX, so a taken BEQ or BGTZ throws away the two instructions fetched
+ * behind it. J is resolved in ID and throws away one.
+ */
+class PipelineModel extends ExecutionObserver {
+    static final String FILENAME_REPORT = "pipeline.txt";
+
+    static final int IF = 0;
+    static final int ID = 1;
+    static final int EX = 2;
+    static final int MEM = 3;
+    static final int WB = 4;
+    private static final String[] STAGE_NAMES = { "IF", "ID", "EX", "MEM", "WB" };
+
+    private boolean forwarding;
+
+    //when the last instruction entered each stage
+    private long[] entered = new long[STAGE_NAMES.length];
+    //earliest cycle the next instruction may be fetched, pushed back by taken branches and jumps
+    private long nextFetch = 1;
+    //earliest cycle an instruction reading each register may enter EX (ID without forwarding)
+    private long[] registerReady = new long[Checkpoint.REGISTER_COUNT];
+    private boolean[] registerLoaded = new boolean[Checkpoint.REGISTER_COUNT];
+
+    //statistics
+    private long instructions = 0;
+    private long dataStalls = 0;
+    private long loadUseStalls = 0;
+    private long controlStalls = 0;
+    private long takenBranches = 0;
+    private long jumps = 0;
+    private long[] busy = new long[STAGE_NAMES.length];
+
+    public PipelineModel( boolean forwarding ) {
+        this.forwarding = forwarding;
+    }
+
+    @Override
+    public void instructionExecuted( InstructionNode node, int nextAddress, boolean transferred ) {
+        final Instruction instruction = node.getInstruction();
+        final int source1 = instruction.getSourceRegister1();
+        final int source2 = instruction.getSourceRegister2();
+        long sourcesReady = Math.max( getReady( source1 ), getReady( source2 ) );
+        boolean fromLoad = isLoaded( source1, sourcesReady ) || isLoaded( source2, sourcesReady );
+
+        //each stage can only be entered once the previous instruction has left it
+        long fetch = Math.max( Math.max( entered[IF] + 1, entered[ID] ), nextFetch );
+        long decode = Math.max( fetch + 1, entered[EX] );
+        if ( !forwarding && sourcesReady > decode ) {
+            dataStalls += sourcesReady - decode;
+            decode = sourcesReady;
+        }
+        long execute = Math.max( decode + 1, entered[MEM] );
+        if ( forwarding && sourcesReady > execute ) {
+            dataStalls += sourcesReady - execute;
+            if ( fromLoad ) {
+                loadUseStalls += sourcesReady - execute;
+            }
+            execute = sourcesReady;
+        }
+        long memory = Math.max( execute + 1, entered[WB] );
+        long writeBack = memory + 1;
+
+        busy[IF] += decode - fetch;
+        busy[ID] += execute - decode;
+        busy[EX] += memory - execute;
+        busy[MEM] += writeBack - memory;
+        busy[WB] += 1;
+        entered[IF] = fetch;
+        entered[ID] = decode;
+        entered[EX] = execute;
+        entered[MEM] = memory;
+        entered[WB] = writeBack;
+
+        final int destination = instruction.getDestinationRegister();
+        if ( destination != Instruction.NO_REGISTER ) {
+            if ( forwarding ) {
+                registerReady[destination] = ( instruction.readsMemory() ? memory : execute ) + 1;
+            }
+            else {
+                registerReady[destination] = writeBack;
+            }
+            registerLoaded[destination] = instruction.readsMemory();
+        }
+
+        //a taken branch or a jump throws away the instructions fetched behind it, even if it goes to the next one
+        if ( transferred ) {
+            long resolved;
+            if ( instruction.isConditionalBranch() ) {
+                resolved = execute;
+                ++takenBranches;
+            }
+            else {
+                resolved = decode;
+                ++jumps;
+            }
+            nextFetch = resolved + 1;
+            //the penalty is how much later the next instruction gets into ID than if this one had fallen through
+            long fallThroughDecode = Math.max( Math.max( fetch + 2, decode + 1 ), execute );
+            controlStalls += Math.max( nextFetch + 1, execute ) - fallThroughDecode;
+        }
+        ++instructions;
+    }
+
+    private long getReady( int register ) {
+        return ( register == Instruction.NO_REGISTER ) ? 0 : registerReady[register];
+    }
+
+    private boolean isLoaded( int register, long ready ) {
+        return register != Instruction.NO_REGISTER && registerLoaded[register] && registerReady[register] == ready;
+    }
+
+    /**
+     * @return cycles from the first fetch to the last write back.
+     */
+    public long getCycles() {
+        return entered[WB];
+    }
+
+    public double getCyclesPerInstruction() {
+        return ( instructions == 0 ) ? 0 : (double) getCycles() / instructions;
+    }
+
+    @Override
+    public String getReportName() {
+        return FILENAME_REPORT;
+    }
+
+    @Override
+    public void writeReport( Writer output ) throws IOException {
+        final long cycles = getCycles();
+        StringBuilder report = new StringBuilder();
+        report.append( "Forwarding:\t" ).append( forwarding ? "on" : "off" ).append( Simulator.NEWLINE );
+        report.append( "Instructions:\t" ).append( instructions ).append( Simulator.NEWLINE );
+        report.append( "Cycles:\t" ).append( cycles ).append( Simulator.NEWLINE );
+        report.append( "CPI:\t" ).append( String.format( "%.3f", getCyclesPerInstruction() ) ).append( Simulator.NEWLINE );
+        report.append( "Data stalls:\t" ).append( dataStalls ).append( Simulator.NEWLINE );
+        report.append( "Load-use stalls:\t" ).append( loadUseStalls ).append( Simulator.NEWLINE );
+        report.append( "Control stalls:\t" ).append( controlStalls ).append( Simulator.NEWLINE );
+        report.append( "Taken branches:\t" ).append( takenBranches ).append( Simulator.NEWLINE );
+        report.append( "Jumps:\t" ).append( jumps ).append( Simulator.NEWLINE );
+        report.append( Simulator.NEWLINE );
+        report.append( "Stage\tBusy\tOccupancy" ).append( Simulator.NEWLINE );
+        for ( int stage = 0; stage != STAGE_NAMES.length; ++stage ) {
+            report.append( STAGE_NAMES[stage] ).append( Simulator.TAB ).append( busy[stage] ).append( Simulator.TAB );
+            report.append( String.format( "%.1f%%", ( cycles == 0 ) ? 0.0 : 100.0 * busy[stage] / cycles ) );
+            report.append( Simulator.NEWLINE );
+        }
+        output.write( report.toString() );
+    }
+}
+
+/**
+ * A set-associative data cache sitting between LW/SW and data memory. It only keeps tags, not data (the simulator's
+ * memory always holds the real values), and counts hits and misses to estimate how many cycles a run would have spent
+ * waiting on memory. Misses are split the usual three ways: compulsory (first touch of a block), capacity (a fully
+ * associative cache of the same size would have missed too) and conflict (everything else).
+ *
+ * Everything lives in primitive arrays sized up front, so an access never allocates.
+ */
+class CacheModel extends ExecutionObserver {
+    static final String FILENAME_REPORT = "cache.txt";
+
+    static final int POLICY_LRU = 0;
+    static final int POLICY_FIFO = 1;
+    static final int POLICY_RANDOM = 2;
+    private static final String[] POLICY_NAMES = { "lru", "fifo", "random" };
+
+    private static final long INVALID = -1;
+    private static final long RANDOM_SEED = 3101;
+
+    private final int size;
+    private final int associativity;
+    private final int blockSize;
+    private final int policy;
+    private final boolean writeBack;
+    private final int missPenalty;
+
+    private final int blockShift;
+    private final int setMask;
+
+    //one entry per line, set by set
+    private final long[] tags;
+    private final long[] stamps;        //last use (LRU) or fill (FIFO)
+    private final boolean[] dirty;
+    private long clock = 0;
+    private long random = RANDOM_SEED;
+
+    //a fully associative LRU cache of the same size, only used to tell capacity misses from conflict misses
+    private final ShadowCache shadow;
+    //one bit per block number, set once the block has been referenced. Sized to cover the data segment as soon as it
+    // is known; only accesses outside of it, which a simulator never makes, grow it.
+    private long[] touchedBlocks = new long[0];
+
+    //statistics
+    private long reads = 0;
+    private long writes = 0;
+    private long readMisses = 0;
+    private long writeMisses = 0;
+    private long compulsoryMisses = 0;
+    private long capacityMisses = 0;
+    private long conflictMisses = 0;
+    private long writeBacks = 0;
+    private long memoryWrites = 0;      //write-through only
+
+    /**
+     * @param size total size in bytes.
+     * @param associativity lines per set.
+     * @param blockSize bytes per line.
+     * @param policy which line in a set is replaced: POLICY_LRU, POLICY_FIFO or POLICY_RANDOM.
+     * @param writeBack true for write-back with write-allocate, false for write-through without write-allocate.
+     * @param missPenalty cycles spent on every transfer between the cache and memory.
+     */
+    public CacheModel( int size, int associativity, int blockSize, int policy, boolean writeBack, int missPenalty ) {
+        if ( Integer.bitCount( blockSize ) != 1 || blockSize < Simulator.MEMORY_SPACING ) {
+            throw new IllegalArgumentException( "Block size must be a power of two of at least one word: " + blockSize );
+        }
+        if ( associativity < 1 || size % ( blockSize * associativity ) != 0 ) {
+            throw new IllegalArgumentException( "Cache size must be a multiple of block size times associativity: " + size );
+        }
+        final int sets = size / ( blockSize * associativity );
+        if ( Integer.bitCount( sets ) != 1 ) {
+            throw new IllegalArgumentException( "Cache must have a power of two sets: " + sets );
+        }
+        if ( policy < POLICY_LRU || policy > POLICY_RANDOM ) {
+            throw new IllegalArgumentException( "Unknown replacement policy: " + policy );
+        }
+        this.size = size;
+        this.associativity = associativity;
+        this.blockSize = blockSize;
+        this.policy = policy;
+        this.writeBack = writeBack;
+        this.missPenalty = missPenalty;
+        this.blockShift = Integer.numberOfTrailingZeros( blockSize );
+        this.setMask = sets - 1;
+
+        final int lines = size / blockSize;
+        tags = new long[lines];
+        stamps = new long[lines];
+        dirty = new boolean[lines];
+        shadow = new ShadowCache( lines );
+        Arrays.fill( tags, INVALID );
+    }
+
+    /**
+     * @return the policy constant for "lru", "fifo" or "random".
+     */
+    static int parsePolicy( String name ) {
+        for ( int policy = 0; policy != POLICY_NAMES.length; ++policy ) {
+            if ( POLICY_NAMES[policy].equals( name ) ) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException( "Unknown replacement policy: " + name );
+    }
+
+    @Override
+    public void instructionExecuted( InstructionNode instruction, int nextAddress, boolean transferred ) {
+        //only memory matters here
+    }
+
+    @Override
+    public void dataSegmentLoaded( int memoryStartAddress, int memorySize ) {
+        if ( memorySize == 0 ) {
+            return;
+        }
+        final long lastAddress = ( memoryStartAddress & 0xFFFFFFFFL ) + ( memorySize - 1L ) * Simulator.MEMORY_SPACING;
+        final int words = (int) ( ( lastAddress >>> blockShift >>> 6 ) + 1 );
+        if ( words > touchedBlocks.length ) {
+            touchedBlocks = Arrays.copyOf( touchedBlocks, words );
+        }
+    }
+
+    @Override
+    public void memoryAccessed( int address, boolean write ) {
+        //the block number is the tag here. Only the set index bits are redundant, which costs nothing to keep.
+        final long block = ( address & 0xFFFFFFFFL ) >>> blockShift;
+        final int first = (int) ( block & setMask ) * associativity;
+        ++clock;
+        if ( write ) {
+            ++writes;
+        }
+        else {
+            ++reads;
+        }
+
+        for ( int line = first; line != first + associativity; ++line ) {
+            if ( tags[line] == block ) {
+                if ( policy == POLICY_LRU ) {
+                    stamps[line] = clock;
+                }
+                if ( write ) {
+                    if ( writeBack ) {
+                        dirty[line] = true;
+                    }
+                    else {
+                        ++memoryWrites;
+                    }
+                }
+                shadow.access( block, true );
+                return;
+            }
+        }
+
+        //miss. Without write-allocate, a write goes straight to memory and the block is never brought in.
+        final boolean allocate = !write || writeBack;
+        if ( write ) {
+            ++writeMisses;
+        }
+        else {
+            ++readMisses;
+        }
+        final boolean shadowHit = shadow.access( block, allocate );
+        final int touchedWord = (int) ( block >>> 6 );
+        if ( touchedWord >= touchedBlocks.length ) {
+            touchedBlocks = Arrays.copyOf( touchedBlocks, Math.max( touchedWord + 1, touchedBlocks.length * 2 ) );
+        }
+        if ( ( touchedBlocks[touchedWord] & ( 1L << block ) ) == 0 ) {
+            //first reference, whether or not the block is brought in
+            ++compulsoryMisses;
+            touchedBlocks[touchedWord] |= 1L << block;
+        }
+        else if ( !shadowHit ) {
+            ++capacityMisses;
+        }
+        else {
+            ++conflictMisses;
+        }
+
+        if ( !allocate ) {
+            ++memoryWrites;
+            return;
+        }
+        final int victim = findVictim( first );
+        if ( tags[victim] != INVALID && dirty[victim] ) {
+            ++writeBacks;
+        }
+        tags[victim] = block;
+        stamps[victim] = clock;
+        dirty[victim] = write;
+    }
+
+    private int findVictim( int first ) {
+        int victim = first;
+        for ( int line = first; line != first + associativity; ++line ) {
+            if ( tags[line] == INVALID ) {
+                return line;
+            }
+            if ( stamps[line] < stamps[victim] ) {
+                victim = line;
+            }
+        }
+        if ( policy == POLICY_RANDOM ) {
+            //xorshift, so picking a victim does not allocate
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            victim = first + (int) ( ( random >>> 1 ) % associativity );
+        }
+        return victim;
+    }
+
+    public long getHits() {
+        return reads + writes - readMisses - writeMisses;
+    }
+
+    public long getMisses() {
+        return readMisses + writeMisses;
+    }
+
+    /**
+     * @return cycles spent waiting on memory: every block brought in or written back, and with write-through every
+     * word written, costs the miss penalty.
+     */
+    public long getStallCycles() {
+        long fills = writeBack ? getMisses() : readMisses;
+        return ( fills + writeBacks + memoryWrites ) * missPenalty;
+    }
+
+    @Override
+    public String getReportName() {
+        return FILENAME_REPORT;
+    }
+
+    @Override
+    public void writeReport( Writer output ) throws IOException {
+        final long accesses = reads + writes;
+        StringBuilder report = new StringBuilder();
+        report.append( "Size:\t" ).append( size ).append( Simulator.NEWLINE );
+        report.append( "Associativity:\t" ).append( associativity ).append( Simulator.NEWLINE );
+        report.append( "Block size:\t" ).append( blockSize ).append( Simulator.NEWLINE );
+        report.append( "Replacement:\t" ).append( POLICY_NAMES[policy] ).append( Simulator.NEWLINE );
+        report.append( "Write policy:\t" ).append( writeBack ? "write-back" : "write-through" ).append( Simulator.NEWLINE );
+        report.append( Simulator.NEWLINE );
+        report.append( "Reads:\t" ).append( reads ).append( Simulator.NEWLINE );
+        report.append( "Writes:\t" ).append( writes ).append( Simulator.NEWLINE );
+        report.append( "Hits:\t" ).append( getHits() ).append( Simulator.NEWLINE );
+        report.append( "Hit rate:\t" ).append( String.format( "%.2f%%", ( accesses == 0 ) ? 0.0 : 100.0 * getHits() / accesses ) ).append( Simulator.NEWLINE );
+        report.append( "Read misses:\t" ).append( readMisses ).append( Simulator.NEWLINE );
+        report.append( "Write misses:\t" ).append( writeMisses ).append( Simulator.NEWLINE );
+        report.append( "Compulsory misses:\t" ).append( compulsoryMisses ).append( Simulator.NEWLINE );
+        report.append( "Capacity misses:\t" ).append( capacityMisses ).append( Simulator.NEWLINE );
+        report.append( "Conflict misses:\t" ).append( conflictMisses ).append( Simulator.NEWLINE );
+        report.append( "Write-backs:\t" ).append( writeBacks ).append( Simulator.NEWLINE );
+        report.append( "Memory writes:\t" ).append( memoryWrites ).append( Simulator.NEWLINE );
+        report.append( "Memory stall cycles:\t" ).append( getStallCycles() ).append( Simulator.NEWLINE );
+        output.write( report.toString() );
+    }
+
+    /**
+     * A fully associative LRU cache of block numbers. A hash table finds the line holding a block, and the lines are
+     * linked from most to least recently used, so an access costs the same however many lines there are.
+     */
+    private static class ShadowCache {
+        private static final int NONE = -1;
+
+        //by line
+        private final long[] tags;
+        private final int[] newer;      //the line used next after this one, NONE for the newest
+        private final int[] older;
+        private int newest = NONE;
+        private int oldest = NONE;
+        private int used = 0;
+
+        //open addressing with linear probing, at most half full. Slots hold a line, or NONE.
+        private final int[] table;
+        private final int tableMask;
+
+        ShadowCache( int lines ) {
+            tags = new long[lines];
+            newer = new int[lines];
+            older = new int[lines];
+            table = new int[Integer.highestOneBit( lines ) << 2];
+            tableMask = table.length - 1;
+            Arrays.fill( table, NONE );
+        }
+
+        /**
+         * @return whether the cache already held the block. It is only brought in (replacing the least recently used
+         * block once the cache is full) if allocate is set.
+         */
+        boolean access( long block, boolean allocate ) {
+            int slot = find( block );
+            int line = table[slot];
+            if ( line != NONE ) {
+                if ( line != newest ) {
+                    unlink( line );
+                    linkNewest( line );
+                }
+                return true;
+            }
+            if ( allocate ) {
+                if ( used != tags.length ) {
+                    line = used++;
+                }
+                else {
+                    line = oldest;
+                    unlink( line );
+                    remove( find( tags[line] ) );
+                    //removing can move the blocks after it, so look for the free slot again
+                    slot = find( block );
+                }
+                tags[line] = block;
+                table[slot] = line;
+                linkNewest( line );
+            }
+            return false;
+        }
+
+        /**
+         * @return the slot holding the block, or the empty slot it would go in.
+         */
+        private int find( long block ) {
+            int slot = hash( block );
+            while ( table[slot] != NONE && tags[table[slot]] != block ) {
+                slot = ( slot + 1 ) & tableMask;
+            }
+            return slot;
+        }
+
+        private int hash( long block ) {
+            return (int) ( ( block * 0x9E3779B97F4A7C15L ) >>> 32 ) & tableMask;
+        }
+
+        /**
+         * Empties the slot, then shifts back any block after it that would no longer be found past the gap.
+         */
+        private void remove( int slot ) {
+            table[slot] = NONE;
+            for ( int next = ( slot + 1 ) & tableMask; table[next] != NONE; next = ( next + 1 ) & tableMask ) {
+                int home = hash( tags[table[next]] );
+                if ( ( ( next - home ) & tableMask ) >= ( ( next - slot ) & tableMask ) ) {
+                    table[slot] = table[next];
+                    table[next] = NONE;
+                    slot = next;
+                }
+            }
+        }
+
+        private void unlink( int line ) {
+            if ( newer[line] != NONE ) {
+                older[newer[line]] = older[line];
+            }
+            else {
+                newest = older[line];
+            }
+            if ( older[line] != NONE ) {
+                newer[older[line]] = newer[line];
+            }
+            else {
+                oldest = newer[line];
+            }
+        }
+
+        private void linkNewest( int line ) {
+            newer[line] = NONE;
+            older[line] = newest;
+            if ( newest != NONE ) {
+                newer[newest] = line;
+            }
+            else {
+                oldest = line;
+            }
+            newest = line;
+        }
+    }
+}
+
+/**
+ * Guesses which way a conditional branch goes before it is resolved. Each predictor is told the real outcome right
+ * after being asked, the way hardware would update it once the branch resolves.
+ */
+abstract class BranchPredictor {
+    static final String STATIC_TAKEN = "static-taken";
+    static final String STATIC_NOT_TAKEN = "static-not-taken";
+    static final String ONE_BIT = "1bit";
+    static final String TWO_BIT = "2bit";
+    static final String GSHARE = "gshare";
+    static final String TARGET_BUFFER = "btb";
+    //a million entries is already far more branches than any input has
+    static final int MAXIMUM_INDEX_BITS = 20;
+
+    /**
+     * @param name one of "static-taken", "static-not-taken", "1bit", "2bit", "gshare" or "btb".
+     * @param indexBits how many bits index the predictor's table, from 1 to MAXIMUM_INDEX_BITS.
+     */
+    static BranchPredictor forName( String name, int indexBits ) {
+        if ( indexBits < 1 || indexBits > MAXIMUM_INDEX_BITS ) {
+            throw new IllegalArgumentException( "Predictor index bits must be between 1 and " + MAXIMUM_INDEX_BITS
+                    + ": " + indexBits );
+        }
+        if ( name.equals( STATIC_TAKEN ) ) {
+            return new Static( name, true );
+        }
+        else if ( name.equals( STATIC_NOT_TAKEN ) ) {
+            return new Static( name, false );
+        }
+        else if ( name.equals( ONE_BIT ) ) {
+            return new OneBit( indexBits );
+        }
+        else if ( name.equals( TWO_BIT ) ) {
+            return new TwoBit( indexBits );
+        }
+        else if ( name.equals( GSHARE ) ) {
+            return new Gshare( indexBits );
+        }
+        else if ( name.equals( TARGET_BUFFER ) ) {
+            return new TargetBuffer( indexBits );
+        }
+        throw new IllegalArgumentException( "Unknown branch predictor: " + name );
+    }
+
+    public abstract String getName();
+
+    /**
+     * @return whether the branch at the address is predicted taken.
+     */
+    public abstract boolean predict( int address );
+
+    /**
+     * @return whether a taken prediction also knew where the branch goes. Only a BTB can get this wrong.
+     */
+    public boolean predictsTarget( int address, int target ) {
+        return true;
+    }
+
+    public abstract void update( int address, boolean taken, int target );
+
+    /**
+     * @return the table index for a branch address. Instructions are word aligned, so the low two bits are dropped.
+     */
+    protected static int index( int address, int mask ) {
+        return ( address >>> 2 ) & mask;
+    }
+
+    static class Static extends BranchPredictor {
+        private String name;
+        private boolean taken;
+
+        public Static( String name, boolean taken ) {
+            this.name = name;
+            this.taken = taken;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean predict( int address ) {
+            return taken;
+        }
+
+        @Override
+        public void update( int address, boolean taken, int target ) { /* never learns */ }
+    }
+
+    /**
+     * Predicts whatever the branch did last time.
+     */
+    static class OneBit extends BranchPredictor {
+        private boolean[] lastTaken;
+        private int mask;
+
+        public OneBit( int indexBits ) {
+            lastTaken = new boolean[1 << indexBits];
+            mask = lastTaken.length - 1;
+        }
+
+        @Override
+        public String getName() {
+            return ONE_BIT;
+        }
+
+        @Override
+        public boolean predict( int address ) {
+            return lastTaken[index( address, mask )];
+        }
+
+        @Override
+        public void update( int address, boolean taken, int target ) {
+            lastTaken[index( address, mask )] = taken;
+        }
+    }
+
+    /**
+     * Saturating two bit counters: 0 and 1 predict not taken, 2 and 3 predict taken. Counters start weakly not taken.
+     */
+    static class TwoBit extends BranchPredictor {
+        protected static final byte WEAKLY_NOT_TAKEN = 1;
+        protected static final byte WEAKLY_TAKEN = 2;
+        protected static final byte STRONGLY_TAKEN = 3;
+
+        protected byte[] counters;
+        protected int mask;
+
+        public TwoBit( int indexBits ) {
+            counters = new byte[1 << indexBits];
+            Arrays.fill( counters, WEAKLY_NOT_TAKEN );
+            mask = counters.length - 1;
+        }
+
+        @Override
+        public String getName() {
+            return TWO_BIT;
+        }
+
+        protected int getIndex( int address ) {
+            return index( address, mask );
+        }
+
+        @Override
+        public boolean predict( int address ) {
+            return counters[getIndex( address )] >= WEAKLY_TAKEN;
+        }
+
+        @Override
+        public void update( int address, boolean taken, int target ) {
+            int index = getIndex( address );
+            if ( taken && counters[index] != STRONGLY_TAKEN ) {
+                ++counters[index];
+            }
+            else if ( !taken && counters[index] != 0 ) {
+                --counters[index];
+            }
+        }
+    }
+
+    /**
+     * Two bit counters indexed by the branch address XORed with the outcomes of the last few branches.
+     */
+    static class Gshare extends TwoBit {
+        private int history = 0;
+
+        public Gshare( int indexBits ) {
+            super( indexBits );
+        }
+
+        @Override
+        public String getName() {
+            return GSHARE;
+        }
+
+        @Override
+        protected int getIndex( int address ) {
+            return index( address, mask ) ^ history;
+        }
+
+        @Override
+        public void update( int address, boolean taken, int target ) {
+            super.update( address, taken, target );
+            history = ( ( history << 1 ) | ( taken ? 1 : 0 ) ) & mask;
+        }
+    }
+
+    /**
+     * A direct mapped branch target buffer. A branch is only predicted taken if it has an entry, tagged with its full
+     * address, whose two bit counter says taken; the entry also supplies the target.
+     */
+    static class TargetBuffer extends TwoBit {
+        private static final int INVALID = -1;
+
+        private int[] tags;
+        private int[] targets;
 
-        return index;
+        public TargetBuffer( int indexBits ) {
+            super( indexBits );
+            tags = new int[counters.length];
+            targets = new int[counters.length];
+            Arrays.fill( tags, INVALID );
+        }
+
+        @Override
+        public String getName() {
+            return TARGET_BUFFER;
+        }
+
+        @Override
+        public boolean predict( int address ) {
+            int index = getIndex( address );
+            return tags[index] == address && counters[index] >= WEAKLY_TAKEN;
+        }
+
+        @Override
+        public boolean predictsTarget( int address, int target ) {
+            return targets[getIndex( address )] == target;
+        }
+
+        @Override
+        public void update( int address, boolean taken, int target ) {
+            int index = getIndex( address );
+            if ( tags[index] != address ) {
+                //only taken branches are worth an entry
+                if ( taken ) {
+                    tags[index] = address;
+                    targets[index] = target;
+                    counters[index] = WEAKLY_TAKEN;
+                }
+                return;
+            }
+            super.update( address, taken, target );
+            if ( taken ) {
+                targets[index] = target;
+            }
+        }
+    }
+}
+
+/**
+ * Runs any number of branch predictors side by side over every BEQ and BGTZ a simulation executes, and reports how
+ * often each one was right, overall and per branch, along with the cycles its mispredictions would have cost.
+ */
+class BranchPredictorModel extends ExecutionObserver {
+    static final String FILENAME_REPORT = "branches.txt";
+
+    private BranchPredictor[] predictors;
+    private int mispredictionPenalty;
+
+    //overall, per predictor
+    private long branches = 0;
+    private long[] correct;
+
+    //per branch, indexed by instruction index and grown as new branches show up
+    private InstructionNode[] branchNodes = new InstructionNode[0];
+    private long[] executed = new long[0];
+    private long[] taken = new long[0];
+    private long[][] branchCorrect;
+
+    public BranchPredictorModel( BranchPredictor[] predictors, int mispredictionPenalty ) {
+        this.predictors = predictors;
+        this.mispredictionPenalty = mispredictionPenalty;
+        correct = new long[predictors.length];
+        branchCorrect = new long[predictors.length][0];
+    }
+
+    @Override
+    public void instructionExecuted( InstructionNode node, int nextAddress, boolean wasTaken ) {
+        if ( !node.getInstruction().isConditionalBranch() ) {
+            return;
+        }
+        final int address = node.getAddress();
+        final int index = Simulator.getInstructionIndexFromAddress( address );
+        if ( index >= executed.length ) {
+            grow( index + 1 );
+        }
+        branchNodes[index] = node;
+        ++executed[index];
+        if ( wasTaken ) {
+            ++taken[index];
+        }
+        ++branches;
+
+        for ( int a = 0; a != predictors.length; ++a ) {
+            BranchPredictor predictor = predictors[a];
+            boolean predictedTaken = predictor.predict( address );
+            if ( predictedTaken == wasTaken && ( !wasTaken || predictor.predictsTarget( address, nextAddress ) ) ) {
+                ++correct[a];
+                ++branchCorrect[a][index];
+            }
+            predictor.update( address, wasTaken, nextAddress );
+        }
+    }
+
+    private void grow( int length ) {
+        length = Math.max( length, executed.length * 2 );
+        branchNodes = Arrays.copyOf( branchNodes, length );
+        executed = Arrays.copyOf( executed, length );
+        taken = Arrays.copyOf( taken, length );
+        for ( int a = 0; a != predictors.length; ++a ) {
+            branchCorrect[a] = Arrays.copyOf( branchCorrect[a], length );
+        }
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getCorrect( int predictor ) {
+        return correct[predictor];
+    }
+
+    @Override
+    public String getReportName() {
+        return FILENAME_REPORT;
+    }
+
+    @Override
+    public void writeReport( Writer output ) throws IOException {
+        StringBuilder report = new StringBuilder();
+        report.append( "Branches:\t" ).append( branches ).append( Simulator.NEWLINE );
+        report.append( "Misprediction penalty:\t" ).append( mispredictionPenalty ).append( Simulator.NEWLINE );
+        report.append( Simulator.NEWLINE );
+        report.append( "Predictor\tCorrect\tMispredicted\tAccuracy\tPenalty cycles" ).append( Simulator.NEWLINE );
+        for ( int a = 0; a != predictors.length; ++a ) {
+            long mispredicted = branches - correct[a];
+            report.append( predictors[a].getName() ).append( Simulator.TAB );
+            report.append( correct[a] ).append( Simulator.TAB );
+            report.append( mispredicted ).append( Simulator.TAB );
+            appendAccuracy( report, correct[a], branches ).append( Simulator.TAB );
+            report.append( mispredicted * mispredictionPenalty ).append( Simulator.NEWLINE );
+        }
+
+        report.append( Simulator.NEWLINE );
+        report.append( "Address\tInstruction\tExecuted\tTaken" );
+        for ( BranchPredictor predictor : predictors ) {
+            report.append( Simulator.TAB ).append( predictor.getName() );
+        }
+        report.append( Simulator.NEWLINE );
+        for ( int index = 0; index != executed.length; ++index ) {
+            if ( executed[index] == 0 ) {
+                continue;
+            }
+            report.append( branchNodes[index].getAddress() ).append( Simulator.TAB );
+            report.append( branchNodes[index] ).append( Simulator.TAB );
+            report.append( executed[index] ).append( Simulator.TAB );
+            report.append( taken[index] );
+            for ( int a = 0; a != predictors.length; ++a ) {
+                appendAccuracy( report.append( Simulator.TAB ), branchCorrect[a][index], executed[index] );
+            }
+            report.append( Simulator.NEWLINE );
+        }
+        output.write( report.toString() );
+    }
+
+    private static StringBuilder appendAccuracy( StringBuilder report, long correct, long total ) {
+        return report.append( String.format( "%.2f%%", ( total == 0 ) ? 0.0 : 100.0 * correct / total ) );
+    }
+}
+
+/**
+ * Counts where a simulation spends its cycles: executions per instruction, per instruction class, taken and not taken
+ * per branch, and reads and writes per data word. The counters are plain arrays, sized for the program when the run
+ * starts and bumped straight from the simulator's loops, so profiling costs a couple of array increments per
+ * instruction. The block engine only counts whole blocks and spreads the counts over their instructions at the end,
+ * so profiled runs can still use it.
+ *
+ * profile.txt holds the hot spots, sorted, and profile.folded the same counts as folded stacks
+ * (category;instruction class;address instruction count), ready for flamegraph.pl and friends.
+ */
+class Profiler {
+    static final String FILENAME_REPORT = "profile.txt";
+    static final String FILENAME_FOLDED = "profile.folded";
+    private static final char FRAME_SEPARATOR = ';';
+
+    private InstructionNode[] nodes = new InstructionNode[0];
+    private int memoryStartAddress;
+
+    //per instruction, indexed by instruction index
+    private long[] executions = new long[0];
+    private long[] taken = new long[0];
+    private long[] blockExecutions = new long[0];   //by the index each block starts at
+    private int[] blockLengths = new int[0];        //of each block counted, as it was compiled
+
+    //per data word, indexed the same way as the simulator's memory
+    private long[] reads = new long[0];
+    private long[] writes = new long[0];
+
+    /**
+     * Sizes the counters for a program. Counts carry over if the program has not changed.
+     */
+    public void attach( InstructionNode[] instructions, int memoryStartAddress, int memorySize ) {
+        if ( nodes != instructions ) {
+            nodes = instructions;
+            executions = new long[instructions.length];
+            taken = new long[instructions.length];
+            blockExecutions = new long[instructions.length];
+            blockLengths = new int[instructions.length];
+        }
+        this.memoryStartAddress = memoryStartAddress;
+        if ( reads.length != memorySize ) {
+            reads = Arrays.copyOf( reads, memorySize );
+            writes = Arrays.copyOf( writes, memorySize );
+        }
+    }
+
+    long[] getExecutions() {
+        return executions;
+    }
+
+    long[] getTaken() {
+        return taken;
+    }
+
+    long[] getBlockExecutions() {
+        return blockExecutions;
+    }
+
+    int[] getBlockLengths() {
+        return blockLengths;
+    }
+
+    long[] getReads() {
+        return reads;
+    }
+
+    long[] getWrites() {
+        return writes;
+    }
+
+    /**
+     * Adds what was counted per block to the per instruction counts.
+     */
+    void flushBlocks() {
+        for ( int index = 0; index != blockExecutions.length; ++index ) {
+            final long count = blockExecutions[index];
+            if ( count == 0 ) {
+                continue;
+            }
+            for ( int a = index, end = index + blockLengths[index]; a != end; ++a ) {
+                executions[a] += count;
+            }
+            blockExecutions[index] = 0;
+        }
+    }
+
+    public long getExecutions( int address ) {
+        int index = Simulator.getInstructionIndexFromAddress( address );
+        return ( index < executions.length ) ? executions[index] : 0;
+    }
+
+    public void writeReports( Path directory ) throws IOException {
+        BufferedWriter output = new BufferedWriter( new FileWriter( directory.resolve( FILENAME_REPORT ).toFile() ) );
+        try {
+            writeReport( output );
+        } finally {
+            output.close();
+        }
+        output = new BufferedWriter( new FileWriter( directory.resolve( FILENAME_FOLDED ).toFile() ) );
+        try {
+            writeFoldedStacks( output );
+        } finally {
+            output.close();
+        }
+    }
+
+    public void writeReport( Writer output ) throws IOException {
+        long cycles = 0;
+        for ( long count : executions ) {
+            cycles += count;
+        }
+        StringBuilder report = new StringBuilder();
+        report.append( "Cycles:\t" ).append( cycles ).append( Simulator.NEWLINE );
+
+        //hottest instructions first
+        report.append( Simulator.NEWLINE );
+        report.append( "Address\tInstruction\tExecuted\tShare" ).append( Simulator.NEWLINE );
+        for ( int index : sortByCount( executions ) ) {
+            report.append( nodes[index].getAddress() ).append( Simulator.TAB );
+            report.append( nodes[index] ).append( Simulator.TAB );
+            report.append( executions[index] ).append( Simulator.TAB );
+            appendShare( report, executions[index], cycles ).append( Simulator.NEWLINE );
+        }
+
+        //every address runs the same instruction every time, so classes are totalled up from the per address counts
+        Map<String, Long> classes = new HashMap<String, Long>();
+        for ( int index = 0; index != executions.length; ++index ) {
+            if ( executions[index] != 0 ) {
+                String name = getClassName( nodes[index] );
+                Long count = classes.get( name );
+                classes.put( name, ( ( count == null ) ? 0 : count ) + executions[index] );
+            }
+        }
+        List<Map.Entry<String, Long>> sortedClasses = new ArrayList<Map.Entry<String, Long>>( classes.entrySet() );
+        Collections.sort( sortedClasses, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare( Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2 ) {
+                int order = entry2.getValue().compareTo( entry1.getValue() );
+                return ( order != 0 ) ? order : entry1.getKey().compareTo( entry2.getKey() );
+            }
+        } );
+        report.append( Simulator.NEWLINE );
+        report.append( "Class\tExecuted\tShare" ).append( Simulator.NEWLINE );
+        for ( Map.Entry<String, Long> entry : sortedClasses ) {
+            report.append( entry.getKey() ).append( Simulator.TAB );
+            report.append( entry.getValue() ).append( Simulator.TAB );
+            appendShare( report, entry.getValue(), cycles ).append( Simulator.NEWLINE );
+        }
+
+        report.append( Simulator.NEWLINE );
+        report.append( "Address\tBranch\tTaken\tNot taken" ).append( Simulator.NEWLINE );
+        for ( int index = 0; index != executions.length; ++index ) {
+            if ( executions[index] != 0 && nodes[index].getInstruction().isConditionalBranch() ) {
+                report.append( nodes[index].getAddress() ).append( Simulator.TAB );
+                report.append( nodes[index] ).append( Simulator.TAB );
+                report.append( taken[index] ).append( Simulator.TAB );
+                report.append( executions[index] - taken[index] ).append( Simulator.NEWLINE );
+            }
+        }
+
+        long[] accesses = new long[reads.length];
+        for ( int word = 0; word != accesses.length; ++word ) {
+            accesses[word] = reads[word] + writes[word];
+        }
+        report.append( Simulator.NEWLINE );
+        report.append( "Data address\tReads\tWrites" ).append( Simulator.NEWLINE );
+        for ( int word : sortByCount( accesses ) ) {
+            report.append( memoryStartAddress + word * Simulator.MEMORY_SPACING ).append( Simulator.TAB );
+            report.append( reads[word] ).append( Simulator.TAB );
+            report.append( writes[word] ).append( Simulator.NEWLINE );
+        }
+        output.write( report.toString() );
+    }
+
+    public void writeFoldedStacks( Writer output ) throws IOException {
+        StringBuilder folded = new StringBuilder();
+        for ( int index = 0; index != executions.length; ++index ) {
+            if ( executions[index] == 0 ) {
+                continue;
+            }
+            folded.append( nodes[index].category.getClass().getSimpleName() ).append( FRAME_SEPARATOR );
+            folded.append( getClassName( nodes[index] ) ).append( FRAME_SEPARATOR );
+            folded.append( nodes[index].getAddress() ).append( Simulator.SPACE ).append( nodes[index] );
+            folded.append( Simulator.SPACE ).append( executions[index] ).append( Simulator.NEWLINE );
+        }
+        output.write( folded.toString() );
+    }
+
+    private static String getClassName( InstructionNode node ) {
+        return node.getInstruction().getClass().getSimpleName();
+    }
+
+    /**
+     * @return the indexes with a count above zero, highest count first. Ties keep index order.
+     */
+    private static List<Integer> sortByCount( final long[] counts ) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for ( int index = 0; index != counts.length; ++index ) {
+            if ( counts[index] != 0 ) {
+                indexes.add( index );
+            }
+        }
+        Collections.sort( indexes, new Comparator<Integer>() {
+            @Override
+            public int compare( Integer index1, Integer index2 ) {
+                int order = Long.compare( counts[index2], counts[index1] );
+                return ( order != 0 ) ? order : index1.compareTo( index2 );
+            }
+        } );
+        return indexes;
+    }
+
+    private static StringBuilder appendShare( StringBuilder report, long count, long total ) {
+        return report.append( String.format( "%.2f%%", ( total == 0 ) ? 0.0 : 100.0 * count / total ) );
+    }
+}
+
+/**
+ * Anything that stops a simulation part way: an instruction that cannot run, a bad address or a run that went over
+ * its budget. Faults are precise: everything before the faulting instruction has happened and nothing after it has,
+ * and the fault knows the address of the instruction and the cycle it would have completed in.
+ */
+abstract class SimulationFault extends MachineFault {
+    static final int UNKNOWN = -1;
+    private static final long serialVersionUID = 1L;
+
+    private String reason;
+    private int programCounter = UNKNOWN;
+    private int cycle = UNKNOWN;
+
+    protected SimulationFault( String reason ) {
+        super( reason );
+        this.reason = reason;
+    }
+
+    /**
+     * @return what went wrong, without where.
+     */
+    @Override
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public int getProgramCounter() {
+        return programCounter;
+    }
+
+    @Override
+    public int getCycle() {
+        return cycle;
+    }
+
+    /**
+     * Records where the fault happened. Whoever catches it first knows best, so later calls are ignored.
+     */
+    void setProgramCounter( int programCounter ) {
+        if ( this.programCounter == UNKNOWN ) {
+            this.programCounter = programCounter;
+        }
+    }
+
+    void setCycle( int cycle ) {
+        if ( this.cycle == UNKNOWN ) {
+            this.cycle = cycle;
+        }
+    }
+
+    @Override
+    public String getMessage() {
+        StringBuilder message = new StringBuilder( reason );
+        if ( programCounter != UNKNOWN ) {
+            message.append( " at PC " ).append( programCounter );
+        }
+        if ( cycle != UNKNOWN ) {
+            message.append( ", cycle " ).append( cycle );
+        }
+        return message.toString();
+    }
+}
+
+/**
+ * Thrown when a word with an opcode no category knows about is run. Decoding it is fine; it only faults if it is
+ * actually reached.
+ */
+class IllegalInstructionFault extends SimulationFault {
+    private static final long serialVersionUID = 1L;
+
+    private int instructionWord;
+
+    public IllegalInstructionFault( int instructionWord ) {
+        super( "Illegal instruction 0x" + Integer.toHexString( instructionWord ) );
+        this.instructionWord = instructionWord;
+    }
+
+    public int getInstructionWord() {
+        return instructionWord;
+    }
+}
+
+/**
+ * Thrown when control goes to an address that holds no instruction: below the first one, past the BREAK (into the data
+ * segment or beyond) or not word aligned. The PC is that address, and the cycle is the one that would have fetched it.
+ */
+class InstructionFetchFault extends SimulationFault {
+    private static final long serialVersionUID = 1L;
+
+    public InstructionFetchFault( int address ) {
+        super( "No instruction at address " + address );
+    }
+}
+
+/**
+ * Thrown when a run uses up its cycle or time budget, which is how runaway programs are stopped.
+ */
+class BudgetExceededFault extends SimulationFault {
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExceededFault( String reason ) {
+        super( reason );
+    }
+}
+
+/**
+ * Thrown when an instruction reads or writes a data address that does not exist.
+ */
+class MemoryAccessException extends SimulationFault {
+    private static final long serialVersionUID = 1L;
+
+    private int address;
+
+    public MemoryAccessException( int address, String reason ) {
+        super( "Memory address " + address + " " + reason );
+        this.address = address;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+}
+
+/**
+ * Stands in for a word whose opcode no category knows about, so a program can still be decoded and disassembled.
+ * Running it faults.
+ */
+class IllegalInstruction extends Instruction {
+    private static final String OUTPUT_ILLEGAL = "ILLEGAL";
+
+    private int instructionWord;
+
+    public IllegalInstruction( int instructionWord ) {
+        this.instructionWord = instructionWord;
+    }
+
+    @Override
+    public String toString() {
+        return OUTPUT_ILLEGAL;
+    }
+
+    @Override
+    public void run( SimulatorCallback callback ) {
+        throw new IllegalInstructionFault( instructionWord );
+    }
+
+    @Override
+    public void compile( BasicBlock.Builder block ) {
+        block.add( BasicBlock.ILLEGAL, 0, 0, instructionWord );
+    }
+}
+
+/**
+ * The purpose of this class is to contain each instruction and hold meta-data about the instruction. Nodes are stored
+ * in the simulator's program array at the index matching their address.
+ */
+class InstructionNode {
+    /* Variables */
+    InstructionCategory category;
+    private Instruction instruction;
+    private int address;
+    private String text;    //an instruction never changes after decoding, so neither does its text.
+
+    public InstructionNode( InstructionCategory category, Instruction instruction ) {
+        this.category = category;
+        this.instruction = instruction;
+        this.address = category.getAddress();
+        this.text = instruction.toString();
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public void run( SimulatorCallback callback ) {
+        instruction.run( callback );
+    }
+
+    public Instruction getInstruction() {
+        return instruction;
+    }
+
+    /**
+     * @return the instruction's text, e.g. "ADD R1, R0, R0", as rendered when the node was created.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
+
+/**
+ * Decides which cycles are written to the simulation output. Picked on the command line with the second argument:
+ * "full" (default), "none", "final", "every:N" or "pc:ADDRESS[,ADDRESS...]".
+ */
+abstract class TraceMode {
+    private static final String FULL = "full";
+    private static final String NONE = "none";
+    private static final String FINAL = "final";
+    private static final String EVERY_PREFIX = "every:";
+    private static final String PC_PREFIX = "pc:";
+
+    static TraceMode parse( String argument ) {
+        if ( argument.equals( FULL ) ) {
+            return new Full();
+        }
+        else if ( argument.equals( NONE ) ) {
+            return new None();
+        }
+        else if ( argument.equals( FINAL ) ) {
+            return new Final();
+        }
+        else if ( argument.startsWith( EVERY_PREFIX ) ) {
+            return new Sampled( Integer.parseInt( argument.substring( EVERY_PREFIX.length() ) ) );
+        }
+        else if ( argument.startsWith( PC_PREFIX ) ) {
+            String[] addressStrings = argument.substring( PC_PREFIX.length() ).split( "," );
+            int[] addresses = new int[addressStrings.length];
+            for ( int a = 0; a != addresses.length; ++a ) {
+                addresses[a] = Integer.parseInt( addressStrings[a].trim() );
+            }
+            return new Addresses( addresses );
+        }
+        throw new IllegalArgumentException( "Unknown trace mode: " + argument );
+    }
+
+    /**
+     * @return whether the cycle that just executed the instruction at the given address should be written out.
+     */
+    public abstract boolean isTraced( int cycle, int address );
+
+    /**
+     * @return whether the last cycle should be written out once the simulation stops.
+     */
+    public boolean isFinalTraced() {
+        return false;
+    }
+
+    /**
+     * @return whether any cycle may be written out while the simulation is running. When it is not, the simulator is
+     * free to run whole basic blocks at a time.
+     */
+    public boolean isCycleTraced() {
+        return true;
     }
 
-    @Override
-    public void jumpTo( int instructionAddress ) {
-        //we need to cycle through our linked-list until we find the right node.
-        InstructionNode search = start;
-        while( search.getAddress() != instructionAddress ) {
-            search = search.getNext();
+    /* Implementations */
+
+    static class Full extends TraceMode {
+        @Override
+        public boolean isTraced( int cycle, int address ) {
+            return true;
         }
-        current = search;
     }
 
-}
-/**
- * The purpose of this class is to contain each instruction, hold meta-data about the instruction, and link every
- * instruction together.
- */
-class InstructionNode {
-    /* Variables */
-    InstructionCategory category;
-    private Instruction instruction;
-    private InstructionNode next = null;
+    static class None extends TraceMode {
+        @Override
+        public boolean isTraced( int cycle, int address ) {
+            return false;
+        }
 
-    public InstructionNode( InstructionCategory category, Instruction instruction ) {
-        this.category = category;
-        this.instruction = instruction;
+        @Override
+        public boolean isCycleTraced() {
+            return false;
+        }
     }
 
-    public void setNext( InstructionNode next ) {
-        this.next = next;
+    static class Final extends None {
+        @Override
+        public boolean isFinalTraced() {
+            return true;
+        }
     }
 
-    public InstructionNode getNext() {
-        return next;
-    }
-    public int getAddress() {
-        return category.getAddress();
-    }
+    static class Sampled extends TraceMode {
+        private int interval;
+
+        public Sampled( int interval ) {
+            if ( interval < 1 ) {
+                throw new IllegalArgumentException( "Trace interval must be at least 1: " + interval );
+            }
+            this.interval = interval;
+        }
 
-    public void run() {
-        instruction.run();
+        @Override
+        public boolean isTraced( int cycle, int address ) {
+            return ( cycle % interval ) == 0;
+        }
     }
 
-    @Override
-    public String toString() {
-        return instruction.toString();
+    static class Addresses extends TraceMode {
+        private BitSet addresses = new BitSet();    //indexed by address / MEMORY_SPACING
+
+        public Addresses( int[] addresses ) {
+            for ( int address : addresses ) {
+                if ( address < 0 || address % Simulator.MEMORY_SPACING != 0 ) {
+                    throw new IllegalArgumentException( "Not an instruction address: " + address );
+                }
+                this.addresses.set( address / Simulator.MEMORY_SPACING );
+            }
+        }
+
+        @Override
+        public boolean isTraced( int cycle, int address ) {
+            return addresses.get( address / Simulator.MEMORY_SPACING );
+        }
     }
 }
 
@@ -411,37 +5212,43 @@ abstract class InstructionCategory {
     /* Constants */
 
     //Category Instructions Sorting
-    protected static final String C_1 = "00";
-    protected static final String C_2 = "01";
-    protected static final String C_3 = "10";
+    protected static final int C_1 = 0; //00
+    protected static final int C_2 = 1; //01
+    protected static final int C_3 = 2; //10
+    private static final int CATEGORY_SHIFT = 30;
+
+    //Field masks. Fields are pulled out of the word with ( word >>> shift ) & mask.
+    protected static final int REGISTER_MASK = 0x1F;
+    protected static final int OPCODE_MASK = 0xF;
+    protected static final int IMMEDIATE_MASK = 0xFFFF;
 
     /**
      * In this method, we are sorting the instruction category based on the first
-     * two bits of thw raw bits, and returning the appropriate type.
+     * two bits of the instruction word, and returning the appropriate type.
      *
-     * @param categoryBits
+     * @param instructionWord the full 32 bit instruction.
      * @return
      */
-    static InstructionCategory getInstructionCategory( int address, String categoryBits, String instructionBits, SimulatorCallback callback ) {
+    static InstructionCategory getInstructionCategory( int address, int instructionWord ) {
         //now we do a bunch of if statements to return the right object.
+        int category = instructionWord >>> CATEGORY_SHIFT;
         //category 1
-        if ( categoryBits.equals( C_1 ) ) {
-            return new Category1( address, instructionBits, callback );
+        if ( category == C_1 ) {
+            return new Category1( address, instructionWord );
         }
         //category 2
-        else if ( categoryBits.equals( C_2 ) ) {
-            return new Category2( address, instructionBits, callback );
+        else if ( category == C_2 ) {
+            return new Category2( address, instructionWord );
         }
         //category 3. Default Category
-        else {//if ( categoryBits.equals( C_3 ) )
-            return new Category3( address, instructionBits, callback );
+        else {//if ( category == C_3 )
+            return new Category3( address, instructionWord );
         }
     }
 
 
     /* Variables */
-    private String instructionBits;
-    private SimulatorCallback callback;
+    private int instructionWord;
 
     public int getAddress() {
         return address;
@@ -451,22 +5258,37 @@ abstract class InstructionCategory {
 
     /**
      * This takes in the instruction and does the required operations.
-     * @param instructionBits Every bit except the category bits.
-     * @param callback Keeps communication with the simulator. It's how it executes its instructions.
+     * @param instructionWord The full 32 bit instruction, category bits included.
      */
-    public InstructionCategory( int address, String instructionBits, SimulatorCallback callback ) {
+    public InstructionCategory( int address, int instructionWord ) {
         this.address = address;
-        this.instructionBits = instructionBits;
-        this.callback = callback;
+        this.instructionWord = instructionWord;
     }
     public abstract Instruction getInstruction();
 
-    protected SimulatorCallback getCallback() {
-        return callback;
+    protected int getInstructionWord() {
+        return instructionWord;
+    }
+
+    /**
+     * @return the unsigned bit field that starts at bit {@code shift} (counting from the least significant bit).
+     */
+    protected int getField( int shift, int mask ) {
+        return ( instructionWord >>> shift ) & mask;
+    }
+
+    /**
+     * @return the low 16 bits, sign-extended. Used for branch/word offsets and ADDI.
+     */
+    protected int getSignedImmediate() {
+        return (short) instructionWord;
     }
 
-    protected String getInstructionBits() {
-        return instructionBits;
+    /**
+     * @return the low 16 bits, zero-extended. Used by the logical immediates.
+     */
+    protected int getUnsignedImmediate() {
+        return instructionWord & IMMEDIATE_MASK;
     }
 }
 
@@ -509,69 +5331,92 @@ abstract class Instruction {
     static protected String immediateToString( final int immediate ) {
         return addCharToNumber( immediate, '#' );
     }
-    public abstract void run();
+    public abstract void run( SimulatorCallback callback );
+
+    /**
+     * Adds this instruction to a basic block that is being compiled.
+     */
+    public abstract void compile( BasicBlock.Builder block );
+
+    /**
+     * @return whether control can leave the straight-line path after this instruction, which ends a basic block.
+     */
+    public boolean endsBasicBlock() {
+        return false;
+    }
+
+    /* Register usage, for timing models. NO_REGISTER stands in for a register that is not used. */
+
+    static final int NO_REGISTER = -1;
+
+    public int getDestinationRegister() {
+        return NO_REGISTER;
+    }
+
+    public int getSourceRegister1() {
+        return NO_REGISTER;
+    }
+
+    public int getSourceRegister2() {
+        return NO_REGISTER;
+    }
+
+    /**
+     * @return whether the destination register is loaded from memory, so its value is only known after MEM.
+     */
+    public boolean readsMemory() {
+        return false;
+    }
+
+    /**
+     * @return whether this is a BEQ or BGTZ, which has to read its registers before it knows where to go.
+     */
+    public boolean isConditionalBranch() {
+        return false;
+    }
 
 }
 
 abstract class CompareInstruction extends Instruction {
     private int destinationRegister;
-    private SimulatorCallback callback;
 
-    public CompareInstruction( int destinationRegister, SimulatorCallback callback ) {
-        this.callback = callback;
+    public CompareInstruction( int destinationRegister ) {
         this.destinationRegister = destinationRegister;
     }
 
-    protected abstract String getValue1BinaryString();
-    protected abstract String getValue2BinaryString();
+    @Override
+    public int getDestinationRegister() {
+        return destinationRegister;
+    }
+
+    protected abstract int getValue1( SimulatorCallback callback );
+    protected abstract int getValue2( SimulatorCallback callback );
 
     @Override
-    public void run() {
-        String value1BinaryString = getValue1BinaryString();
-        String value2BinaryString = getValue2BinaryString();
+    public void run( SimulatorCallback callback ) {
+        int result = performOperation( getValue1( callback ), getValue2( callback ) );
+        callback.setRegister( destinationRegister, result );
+    }
 
-        final int value1Length = value1BinaryString.length();
-        final int value2Length = value2BinaryString.length();
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Performs the logical operation on the full 32 bit values in one go.
+     */
+    protected abstract int performOperation( final int value1, final int value2 );
 
-        //the idea of this method is to have the strings be compared, starting with their least significant bit,
-        // towards the most significant bit, until one of them runs out of length!
-        for( int a = 0; a != 32; ++a ) {
-            int index1 = ( value1Length - ( a + 1 ) );
-            int index2 = ( value2Length - ( a + 1 ) );
-            char value1Char;
-            char value2Char;
-            //since we are going to create a 32 bit register regardless we need to be sure our index is in range.
-            // If not, we are going to assume its padded with zeros.
-            if ( index1 < 0 ) value1Char = '0';
-            else value1Char = value1BinaryString.charAt( index1 );
-            if ( index2 < 0 ) value2Char = '0';
-            else value2Char = value2BinaryString.charAt( index2 );
-            //turn the chars into boolean!
-            boolean value1Boolean;
-            boolean value2Boolean;
-            boolean booleanOutput;
-            if ( value1Char == '1' ) value1Boolean = true;
-            else value1Boolean = false;
-            if ( value2Char == '1' ) value2Boolean = true;
-            else value2Boolean = false;
-            //now we FINALLY have two booleans that represent the current characters!
-            //now we can COMPARE THEM! YAY!
-            booleanOutput = compare( value1Boolean, value2Boolean );
-            //now we finally take that booleanOutput and put it back into the builder!
-            if( booleanOutput ) {
-                builder.insert( 0, "1" );
-            }
-            else {
-                builder.insert( 0, "0" );
+    /**
+     * Reference implementation of performOperation, built one bit at a time out of compare(). It is not used while
+     * simulating; DifferentialFuzzer checks the native operations against it.
+     */
+    int referenceOperation( final int value1, final int value2 ) {
+        int result = 0;
+        for ( int bit = 0; bit != 32; ++bit ) {
+            boolean value1Boolean = ( ( value1 >>> bit ) & 1 ) != 0;
+            boolean value2Boolean = ( ( value2 >>> bit ) & 1 ) != 0;
+            if ( compare( value1Boolean, value2Boolean ) ) {
+                result |= ( 1 << bit );
             }
         }
-        //holy guacamole we are done!
-        //now all we need to do is turn that builder back into an integer. Not so bad.
-        int result = new BigInteger(builder.toString(), 2 ).intValue();
-        //and nowwwww, put the result back into the registers!
-        callback.setRegister( destinationRegister, result );
-        //hallelujah!
+        return result;
     }
 
     protected abstract boolean compare( boolean value1, boolean value2 );
@@ -594,41 +5439,49 @@ class Category1 extends InstructionCategory {
     private static final int OPCODE_SW = 6;
     private static final int OPCODE_LW = 7;
 
-    private static final int[] OPCODE_LOC = { 0, 4 };
-    private static final int[] RS_LOC = { 0, 5 };
-    private static final int[] RT_LOC = { 5, 10 };
-    private static final int OFFSET_LOC = 10;
+    private static final int OPCODE_SHIFT = 26;
+    private static final int RS_SHIFT = 21;
+    private static final int RT_SHIFT = 16;
+    private static final int JUMP_TARGET_MASK = 0x3FFFFFF;
+    private static final int JUMP_REGION_MASK = 0xF0000000;
+
+    public Category1( int address, int instructionWord ) {
+        super( address, instructionWord );
+    }
 
-    public Category1( int address, String instructionBits, SimulatorCallback callback ) {
-        super( address, instructionBits, callback );
+    /**
+     * @return whether the word is a BREAK, without decoding it.
+     */
+    static boolean isBreak( int instructionWord ) {
+        return ( instructionWord >>> OPCODE_SHIFT ) == ( ( C_1 << 4 ) | OPCODE_BREAK );
     }
 
     @Override
     public Instruction getInstruction() {
-        //get raw string representing opcode
-        String opcodeString = getInstructionBits().substring( OPCODE_LOC[0], OPCODE_LOC[1] );
-        String bitsWithoutOpcode = getInstructionBits().substring( OPCODE_LOC[1] );
-        int opcode = Integer.parseInt( opcodeString, 2 );
+        int opcode = getField( OPCODE_SHIFT, OPCODE_MASK );
         Instruction instruction = null;
 
         switch( opcode ) {
             case OPCODE_JUMP:
-                instruction = new UnconditionalJump( bitsWithoutOpcode );
+                instruction = new UnconditionalJump();
                 break;
             case OPCODE_BEQ:
-                instruction = new BranchIfEqual( bitsWithoutOpcode );
+                instruction = new BranchIfEqual();
                 break;
             case OPCODE_BGTZ:
-                instruction = new BranchIfGreaterThanZero( bitsWithoutOpcode );
+                instruction = new BranchIfGreaterThanZero();
                 break;
             case OPCODE_BREAK:
                 instruction = new Break();
                 break;
             case OPCODE_SW:
-                instruction = new StoreWord( bitsWithoutOpcode );
+                instruction = new StoreWord();
                 break;
             case OPCODE_LW:
-                instruction = new LoadWord( bitsWithoutOpcode );
+                instruction = new LoadWord();
+                break;
+            default:
+                instruction = new IllegalInstruction( getInstructionWord() );
                 break;
         }
         return instruction;
@@ -636,29 +5489,14 @@ class Category1 extends InstructionCategory {
 
     /* Class Templates */
 
-    abstract class Category1Instruction extends Instruction {
-        private String bitsWithoutOpcode;
-
-        protected String getBitsWithoutOpcode() {
-            return bitsWithoutOpcode;
-        }
-
-        public Category1Instruction( String bitsWithoutOpcode ) {
-            this.bitsWithoutOpcode = bitsWithoutOpcode;
-        }
-    }
-
-    abstract class Branch extends Category1Instruction {
+    abstract class Branch extends Instruction {
 
         private int offset;
         private int jumpAddress;
 
-        public Branch( String bitsWithoutOpcode ) {
-            super( bitsWithoutOpcode );
-            String offsetString = bitsWithoutOpcode.substring( OFFSET_LOC );
-
+        public Branch() {
             //assign variables
-            offset = new BigInteger( offsetString, 2 ).intValue();
+            offset = getSignedImmediate();
             offset <<= 2; //shift our offset by two, due to MIPS convention
             jumpAddress = offset;
             //add to PC + 4 to make real offset
@@ -672,23 +5510,28 @@ class Category1 extends InstructionCategory {
         protected int getJumpAddress() {
             return jumpAddress;
         }
+
+        @Override
+        public boolean endsBasicBlock() {
+            return true;
+        }
+
+        @Override
+        public boolean isConditionalBranch() {
+            return true;
+        }
     }
 
-    abstract class Word extends Category1Instruction {
+    abstract class Word extends Instruction {
 
         private int register;
         private int baseRegister;
         private int offset;
 
-        public Word( String bitsWithoutOpcode ) {
-            super( bitsWithoutOpcode );
-            String baseRegisterString = getBitsWithoutOpcode().substring( RS_LOC[0], RS_LOC[1] );
-            String registerString = getBitsWithoutOpcode().substring( RT_LOC[0], RT_LOC[1] );
-            String offsetString = getBitsWithoutOpcode().substring( OFFSET_LOC );
-
-            baseRegister = Integer.parseInt( baseRegisterString, 2 );
-            register = Integer.parseInt( registerString, 2 );
-            offset = new BigInteger( offsetString, 2 ).intValue();
+        public Word() {
+            baseRegister = getField( RS_SHIFT, REGISTER_MASK );
+            register = getField( RT_SHIFT, REGISTER_MASK );
+            offset = getSignedImmediate();
         }
 
         protected String buildToString( final String name ) {
@@ -711,15 +5554,19 @@ class Category1 extends InstructionCategory {
         protected int getOffset() {
             return offset;
         }
+
+        @Override
+        public int getSourceRegister1() {
+            return baseRegister;
+        }
     }
 
     /* Class Implementations */
 
-    class UnconditionalJump extends Category1Instruction {
+    class UnconditionalJump extends Instruction {
         private int jumpLocation;
 
-        public UnconditionalJump( String bitsWithoutOpcode ) {
-            super( bitsWithoutOpcode );
+        public UnconditionalJump() {
             calculateJumpLocation();
         }
 
@@ -727,20 +5574,12 @@ class Category1 extends InstructionCategory {
          * This method calcualtes the actual int of where the jump will go.
          */
         private void calculateJumpLocation() {
-            StringBuilder workingString = new StringBuilder( getBitsWithoutOpcode() );
-            // "shift left" two by adding two zeros on the end.
-            workingString.append( "00" ); //we are now at 28 bits
-            StringBuilder binaryAddressString = new StringBuilder( Integer.toBinaryString( getAddress() + Simulator.MEMORY_SPACING ) );
-            //now we expand the binary address string until it is 32 bits!
-            while ( workingString.length() != 32 ) {
-                //insert a zero at the beginning
-                workingString.insert( 0, '0' );
-            }
-            String upperFourBits = workingString.substring( 0, 3 );
-            //add those upper four bits to the workingString
-            workingString.insert( 0, upperFourBits );
+            // "shift left" two, which gets us 28 bits
+            int target = getField( 0, JUMP_TARGET_MASK ) << 2;
+            //the upper four bits come from PC + 4
+            int upperFourBits = ( getAddress() + Simulator.MEMORY_SPACING ) & JUMP_REGION_MASK;
             //Woohoo! We have our address! Now lets set the class variable.
-            jumpLocation = new BigInteger( workingString.toString(), 2 ).intValue();
+            jumpLocation = upperFourBits | target;
         }
 
         @Override
@@ -749,8 +5588,18 @@ class Category1 extends InstructionCategory {
         }
 
         @Override
-        public void run() {
-            getCallback().jumpTo( jumpLocation );
+        public void run( SimulatorCallback callback ) {
+            callback.jumpTo( jumpLocation );
+        }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.J, 0, 0, jumpLocation );
+        }
+
+        @Override
+        public boolean endsBasicBlock() {
+            return true;
         }
     }
 
@@ -758,14 +5607,10 @@ class Category1 extends InstructionCategory {
         private int register1;
         private int register2;
 
-        public BranchIfEqual( String bitsWithoutOpcode ) {
-            //feels the offset string to the superconstructor
-            super( bitsWithoutOpcode );
-            String register1BinaryString = bitsWithoutOpcode.substring( RS_LOC[0], RS_LOC[1] );
-            String register2BinaryString = bitsWithoutOpcode.substring( RT_LOC[0], RT_LOC[1] );
-            //parse
-            register1 = Integer.parseInt( register1BinaryString, 2 );
-            register2 = Integer.parseInt( register2BinaryString, 2 );
+        public BranchIfEqual() {
+            //the superconstructor takes care of the offset
+            register1 = getField( RS_SHIFT, REGISTER_MASK );
+            register2 = getField( RT_SHIFT, REGISTER_MASK );
         }
 
         @Override
@@ -774,24 +5619,38 @@ class Category1 extends InstructionCategory {
         }
 
         @Override
-        public void run() {
+        public void run( SimulatorCallback callback ) {
             //get values of register1 and register2
-            int register1Val = getCallback().getRegister( register1 );
-            int register2Val = getCallback().getRegister( register2 );
+            int register1Val = callback.getRegister( register1 );
+            int register2Val = callback.getRegister( register2 );
 
             //if they are equal, jump!
             if( register1Val == register2Val ) {
-                getCallback().jumpTo( getJumpAddress() );
+                callback.jumpTo( getJumpAddress() );
             }
         }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.BEQ, register1, register2, getJumpAddress() );
+        }
+
+        @Override
+        public int getSourceRegister1() {
+            return register1;
+        }
+
+        @Override
+        public int getSourceRegister2() {
+            return register2;
+        }
     }
 
     class BranchIfGreaterThanZero extends Branch {
         private int register;
 
-        public BranchIfGreaterThanZero( String bitsWithoutOpcode ) {
-            super( bitsWithoutOpcode );
-            register = Integer.parseInt( getBitsWithoutOpcode().substring( RS_LOC[0], RS_LOC[1] ), 2 );
+        public BranchIfGreaterThanZero() {
+            register = getField( RS_SHIFT, REGISTER_MASK );
         }
 
         @Override
@@ -800,12 +5659,22 @@ class Category1 extends InstructionCategory {
         }
 
         @Override
-        public void run() {
-            int value = getCallback().getRegister( register );
+        public void run( SimulatorCallback callback ) {
+            int value = callback.getRegister( register );
             if ( value > 0 ) {
-                getCallback().jumpTo( getJumpAddress() );
+                callback.jumpTo( getJumpAddress() );
             }
         }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.BGTZ, register, 0, getJumpAddress() );
+        }
+
+        @Override
+        public int getSourceRegister1() {
+            return register;
+        }
     }
 
     class Break extends Instruction {
@@ -816,13 +5685,22 @@ class Category1 extends InstructionCategory {
         }
 
         @Override
-        public void run() { /* does not really do anything... */ }
+        public void run( SimulatorCallback callback ) { /* does not really do anything... */ }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.BREAK, 0, 0, 0 );
+        }
+
+        @Override
+        public boolean endsBasicBlock() {
+            return true;
+        }
     }
 
     class StoreWord extends Word {
 
-        public StoreWord( String bitsWithoutOpcode ) {
-            super( bitsWithoutOpcode );
+        public StoreWord() {
         }
 
         @Override
@@ -831,19 +5709,28 @@ class Category1 extends InstructionCategory {
         }
 
         @Override
-        public void run() {
+        public void run( SimulatorCallback callback ) {
             //get values
-            int rtValue = getCallback().getRegister( getRegister() );
-            int baseValue = getCallback().getRegister( getBaseRegister() );
+            int rtValue = callback.getRegister( getRegister() );
+            int baseValue = callback.getRegister( getBaseRegister() );
             int address = ( baseValue + getOffset() );
-            getCallback().setMemory( address, rtValue );
+            callback.setMemory( address, rtValue );
+        }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.SW, getRegister(), getBaseRegister(), getOffset() );
+        }
+
+        @Override
+        public int getSourceRegister2() {
+            return getRegister();
         }
     }
 
     class LoadWord extends Word {
 
-        public LoadWord( String bitsWithoutOpcode ) {
-            super( bitsWithoutOpcode );
+        public LoadWord() {
         }
 
         @Override
@@ -852,12 +5739,27 @@ class Category1 extends InstructionCategory {
         }
 
         @Override
-        public void run() {
+        public void run( SimulatorCallback callback ) {
             //get values
-            int baseValue = getCallback().getRegister( getBaseRegister() );
+            int baseValue = callback.getRegister( getBaseRegister() );
             int address = ( baseValue + getOffset() );
-            int saveValue = getCallback().getMemory( address );
-            getCallback().setRegister( getRegister(), saveValue );
+            int saveValue = callback.getMemory( address );
+            callback.setRegister( getRegister(), saveValue );
+        }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.LW, getRegister(), getBaseRegister(), getOffset() );
+        }
+
+        @Override
+        public int getDestinationRegister() {
+            return getRegister();
+        }
+
+        @Override
+        public boolean readsMemory() {
+            return true;
         }
 
     }
@@ -874,14 +5776,10 @@ class Category2 extends InstructionCategory {
     private static final String TITLE_XOR = "XOR";
     private static final String TITLE_NOR = "NOR";
 
-    private static final int[] RS_LOC = { 0, 5 };
-    private static final int[] RT_LOC = { 5, 10 };
-    private static final int[] OPCODE_LOC = { 10, 14 };
-    private static final int[] RD_LOC = { 14, 19 };
-
-    private String rsString;
-    private String rtString;
-    private String rdString;
+    private static final int RS_SHIFT = 25;
+    private static final int RT_SHIFT = 20;
+    private static final int OPCODE_SHIFT = 16;
+    private static final int RD_SHIFT = 11;
 
     private int source1; //source register 1
     private int source2; //source register 2
@@ -890,27 +5788,21 @@ class Category2 extends InstructionCategory {
     /**
      * This takes in the instruction and does the required operations.
      *
-     * @param instructionBits Essentially every bit except the category bits.
+     * @param instructionWord The full 32 bit instruction.
      */
-    public Category2( int address, String instructionBits, SimulatorCallback callback ) {
-        super( address, instructionBits, callback );
+    public Category2( int address, int instructionWord ) {
+        super( address, instructionWord );
 
-        //first thing's first. We need to extract all of the Strings out of the instructionBits!
-        rsString = getInstructionBits().substring( RS_LOC[0], RS_LOC[1] );
-        rtString = getInstructionBits().substring( RT_LOC[0], RT_LOC[1] );
-        rdString = getInstructionBits().substring( RD_LOC[0], RD_LOC[1] );
-
-        //now we need to parse those instruction bits into usable integers, assigning accordingly.
-        source1 = Integer.parseUnsignedInt( rsString, 2 );
-        source2 = Integer.parseUnsignedInt( rtString, 2 );
-        destination = Integer.parseUnsignedInt( rdString, 2 );
+        //first thing's first. We need to pull the register numbers out of the instruction word!
+        source1 = getField( RS_SHIFT, REGISTER_MASK );
+        source2 = getField( RT_SHIFT, REGISTER_MASK );
+        destination = getField( RD_SHIFT, REGISTER_MASK );
     }
 
     @Override
     public Instruction getInstruction() {
         //parse the opcode
-        String opcodeString = getInstructionBits().substring( OPCODE_LOC[0], OPCODE_LOC[1] );
-        int opcode = Integer.parseUnsignedInt( opcodeString, 2 );
+        int opcode = getField( OPCODE_SHIFT, OPCODE_MASK );
 
         //turn the opcode into a usable Object.
         Instruction instruction = null;
@@ -936,6 +5828,9 @@ class Category2 extends InstructionCategory {
             case 6: //NOR
                 instruction = new Nor();
                 break;
+            default:
+                instruction = new IllegalInstruction( getInstructionWord() );
+                break;
         }
         return instruction;
     }
@@ -943,19 +5838,36 @@ class Category2 extends InstructionCategory {
     private abstract class TwoCompareInstruction extends CompareInstruction {
 
         public TwoCompareInstruction() {
-            super( destination, getCallback() );
+            super( destination );
+        }
+
+        @Override
+        protected int getValue1( SimulatorCallback callback ) {
+            return callback.getRegister( source1 );
+        }
+
+        @Override
+        protected int getValue2( SimulatorCallback callback ) {
+            return callback.getRegister( source2 );
+        }
+
+        @Override
+        public int getSourceRegister1() {
+            return source1;
         }
 
         @Override
-        protected String getValue1BinaryString() {
-            return Integer.toString( getCallback().getRegister( source1 ), 2 );
+        public int getSourceRegister2() {
+            return source2;
         }
 
         @Override
-        protected String getValue2BinaryString() {
-            return Integer.toString( getCallback().getRegister( source2 ), 2 );
+        public void compile( BasicBlock.Builder block ) {
+            block.add( getBlockOperation(), destination, source1, source2 );
         }
 
+        protected abstract int getBlockOperation();
+
         protected String buildToString( String title ) {
             return buildToString( title, registerToString( destination ), registerToString( source1 ), registerToString( source2 ) );
         }
@@ -963,15 +5875,37 @@ class Category2 extends InstructionCategory {
 
     private abstract class ArithmeticInstruction extends Instruction {
         @Override
-        public void run() {
-            int value1 = getCallback().getRegister( source1 );
-            int value2 = getCallback().getRegister( source2 );
+        public void run( SimulatorCallback callback ) {
+            int value1 = callback.getRegister( source1 );
+            int value2 = callback.getRegister( source2 );
             int result = performOperation( value1, value2 );
-            getCallback().setRegister( destination, result );
+            callback.setRegister( destination, result );
         }
 
         protected abstract int performOperation( final int value1, final int value2 );
 
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( getBlockOperation(), destination, source1, source2 );
+        }
+
+        @Override
+        public int getDestinationRegister() {
+            return destination;
+        }
+
+        @Override
+        public int getSourceRegister1() {
+            return source1;
+        }
+
+        @Override
+        public int getSourceRegister2() {
+            return source2;
+        }
+
+        protected abstract int getBlockOperation();
+
         protected String buildToString( String title ) {
             return buildToString( title, registerToString( destination ), registerToString( source1 ), registerToString( source2 ) );
         }
@@ -981,6 +5915,11 @@ class Category2 extends InstructionCategory {
 
     private class Add extends ArithmeticInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.ADD;
+        }
+
         @Override
         protected int performOperation( int value1, int value2 ) {
             return ( value1 + value2 );
@@ -994,6 +5933,11 @@ class Category2 extends InstructionCategory {
 
     private class Subtract extends ArithmeticInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.SUB;
+        }
+
         @Override
         protected int performOperation( int value1, int value2 ) {
             return ( value1 - value2 );
@@ -1007,6 +5951,11 @@ class Category2 extends InstructionCategory {
 
     private class Multiply extends ArithmeticInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.MUL;
+        }
+
         @Override
         protected int performOperation( int value1, int value2 ) {
             return ( value1 * value2 );
@@ -1020,6 +5969,16 @@ class Category2 extends InstructionCategory {
 
     private class And extends TwoCompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.AND;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ( value1 & value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             return ( value1 && value2 );
@@ -1033,6 +5992,16 @@ class Category2 extends InstructionCategory {
 
     private class Or extends TwoCompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.OR;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ( value1 | value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             return value1 || value2;
@@ -1046,6 +6015,16 @@ class Category2 extends InstructionCategory {
 
     private class Xor extends TwoCompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.XOR;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ( value1 ^ value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             if ( value1 && !value2 ) return true;
@@ -1061,6 +6040,16 @@ class Category2 extends InstructionCategory {
 
     private class Nor extends TwoCompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.NOR;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ~( value1 | value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             return ( !value1 && !value2 );
@@ -1086,39 +6075,28 @@ class Category3 extends InstructionCategory {
     private static final int OPCODE_ORI = 2;
     private static final int OPCODE_XORI = 3;
 
-    private static final int[] RS_LOC = { 0, 5 };
-    private static final int[] RT_LOC = { 5, 10 };
-    private static final int[] OPCODE_LOC = { 10, 14 };
-    private static final int[] IMMEDIATE_LOC = { 14, 30 };
+    private static final int RS_SHIFT = 25;
+    private static final int RT_SHIFT = 20;
+    private static final int OPCODE_SHIFT = 16;
 
     private int sourceRegister;
     private int destinationRegister;
-    private String immediateString;
 
     /**
      * This takes in the instruction and does the required operations.
      *
-     * @param instructionBits Essentially every bit except the category bits.
+     * @param instructionWord The full 32 bit instruction.
      */
-    public Category3( int address, String instructionBits, SimulatorCallback callback ) {
-        super( address, instructionBits, callback );
+    public Category3( int address, int instructionWord ) {
+        super( address, instructionWord );
     }
 
     @Override
     public Instruction getInstruction() {
         //parse everything.
-        String opcodeString;
-        String destinationRegisterString;
-        String sourceRegisterString;
-
-        opcodeString = getInstructionBits().substring( OPCODE_LOC[0], OPCODE_LOC[1] );
-        sourceRegisterString = getInstructionBits().substring( RS_LOC[0], RS_LOC[1] );
-        destinationRegisterString = getInstructionBits().substring( RT_LOC[0], RT_LOC[1] );
-        immediateString = getInstructionBits().substring( IMMEDIATE_LOC[0], IMMEDIATE_LOC[1] );
-
-        int opcode = Integer.parseInt( opcodeString, 2 );
-        sourceRegister = Integer.parseInt( sourceRegisterString, 2 );
-        destinationRegister = Integer.parseInt( destinationRegisterString, 2 );
+        int opcode = getField( OPCODE_SHIFT, OPCODE_MASK );
+        sourceRegister = getField( RS_SHIFT, REGISTER_MASK );
+        destinationRegister = getField( RT_SHIFT, REGISTER_MASK );
 
         Instruction instruction = null;
         //switch on the opcode to get the right object.
@@ -1135,6 +6113,9 @@ class Category3 extends InstructionCategory {
             case OPCODE_XORI:
                 instruction = new XOrImmediate();
                 break;
+            default:
+                instruction = new IllegalInstruction( getInstructionWord() );
+                break;
         }
 
         return instruction;
@@ -1147,23 +6128,36 @@ class Category3 extends InstructionCategory {
         private int immediateInt;
 
         public Category3CompareInstruction() {
-            super( destinationRegister, getCallback() );
+            super( destinationRegister );
             calculateImmediate();
         }
         void calculateImmediate() {
-            immediateInt = new BigInteger( immediateString, 2 ).intValue();
+            //logical immediates are zero-extended
+            immediateInt = getUnsignedImmediate();
+        }
+
+        @Override
+        protected int getValue1( SimulatorCallback callback ) {
+            return callback.getRegister( sourceRegister );
+        }
+
+        @Override
+        protected int getValue2( SimulatorCallback callback ) {
+            return immediateInt;
         }
 
         @Override
-        protected String getValue1BinaryString() {
-            return Integer.toString( getCallback().getRegister( sourceRegister ), 2 );
+        public int getSourceRegister1() {
+            return sourceRegister;
         }
 
         @Override
-        protected String getValue2BinaryString() {
-            return immediateString;
+        public void compile( BasicBlock.Builder block ) {
+            block.add( getBlockOperation(), destinationRegister, sourceRegister, immediateInt );
         }
 
+        protected abstract int getBlockOperation();
+
         protected String buildToString( final String name ) {
             return buildToString( name, registerToString( destinationRegister ), registerToString( sourceRegister ), immediateToString( immediateInt ) );
         }
@@ -1179,7 +6173,8 @@ class Category3 extends InstructionCategory {
         }
 
         void calculateImmediate() {
-            immediateInt = new BigInteger( immediateString, 2 ).intValue();
+            //ADDI sign-extends its immediate
+            immediateInt = getSignedImmediate();
         }
 
         @Override
@@ -1188,15 +6183,40 @@ class Category3 extends InstructionCategory {
         }
 
         @Override
-        public void run() {
-            int sourceRegisterValue = getCallback().getRegister( sourceRegister );
+        public void run( SimulatorCallback callback ) {
+            int sourceRegisterValue = callback.getRegister( sourceRegister );
             int result = sourceRegisterValue + immediateInt;
-            getCallback().setRegister( destinationRegister, result );
+            callback.setRegister( destinationRegister, result );
+        }
+
+        @Override
+        public void compile( BasicBlock.Builder block ) {
+            block.add( BasicBlock.ADDI, destinationRegister, sourceRegister, immediateInt );
+        }
+
+        @Override
+        public int getDestinationRegister() {
+            return destinationRegister;
+        }
+
+        @Override
+        public int getSourceRegister1() {
+            return sourceRegister;
         }
     }
 
     class AndImmediate extends Category3CompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.ANDI;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ( value1 & value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             return value1 && value2;
@@ -1210,6 +6230,16 @@ class Category3 extends InstructionCategory {
 
     class OrImmediate extends Category3CompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.ORI;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ( value1 | value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             return value1 || value2;
@@ -1223,6 +6253,16 @@ class Category3 extends InstructionCategory {
 
     class XOrImmediate extends Category3CompareInstruction {
 
+        @Override
+        protected int getBlockOperation() {
+            return BasicBlock.XORI;
+        }
+
+        @Override
+        protected int performOperation( int value1, int value2 ) {
+            return ( value1 ^ value2 );
+        }
+
         @Override
         protected boolean compare( boolean value1, boolean value2 ) {
             return ( value1 && !value2 ) || ( !value1 && value2 );
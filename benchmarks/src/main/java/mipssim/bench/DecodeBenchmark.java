@@ -0,0 +1,122 @@
+package mipssim.bench;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import mipssim.api.Machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decode throughput. processLine times the simulator end to end, up to the disassembly; bitFieldDecode and legacyDecode compare the current
+ * shift/mask field extraction with the substring/BigInteger parsing Category1/2/3 used to do. decodeParallel and
+ * decodeSequential time ProgramDecoder alone, with its chunks on the common pool and all on the calling thread.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class DecodeBenchmark {
+
+    @Param( { "100000", "1000000" } )
+    public int lineCount;
+
+    private String[] lines;
+
+    @Setup
+    public void setUp() {
+        lines = ProgramGenerator.decodeOnly( lineCount );
+    }
+
+    @Benchmark
+    public Object processLine() {
+        Machine simulator = SimulatorBridge.newSimulator();
+        for ( String line : lines ) {
+            SimulatorBridge.processLine( simulator, line );
+        }
+        //lines are only collected until the program is needed, so ask for it
+        return SimulatorBridge.getDisassemblyOutput( simulator );
+    }
+
+    @Benchmark
+    public Object decodeParallel() {
+        return decode( ForkJoinPool.commonPool() );
+    }
+
+    @Benchmark
+    public Object decodeSequential() {
+        return decode( null );
+    }
+
+    private Object decode( ForkJoinPool pool ) {
+        Object decoder = SimulatorBridge.newDecoder( pool );
+        for ( String line : lines ) {
+            SimulatorBridge.decodeLine( decoder, line );
+        }
+        return SimulatorBridge.build( decoder );
+    }
+
+    @Benchmark
+    public long bitFieldDecode() {
+        long sum = 0;
+        for ( String line : lines ) {
+            int word = SimulatorBridge.parseBinaryWord( line );
+            int category = word >>> 30;
+            if ( category == 0 ) {
+                sum += ( ( word >>> 26 ) & 0xF ) + ( ( word >>> 21 ) & 0x1F ) + ( ( word >>> 16 ) & 0x1F ) + (short) word;
+            }
+            else if ( category == 1 ) {
+                sum += ( ( word >>> 16 ) & 0xF ) + ( ( word >>> 25 ) & 0x1F ) + ( ( word >>> 20 ) & 0x1F ) + ( ( word >>> 11 ) & 0x1F );
+            }
+            else {
+                sum += ( ( word >>> 16 ) & 0xF ) + ( ( word >>> 25 ) & 0x1F ) + ( ( word >>> 20 ) & 0x1F ) + ( word & 0xFFFF );
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long legacyDecode() {
+        long sum = 0;
+        for ( String line : lines ) {
+            String categoryBits = line.substring( 0, 2 );
+            String instructionBits = line.substring( 2 );
+            if ( categoryBits.equals( "00" ) ) {
+                int opcode = Integer.parseInt( instructionBits.substring( 0, 4 ), 2 );
+                String bitsWithoutOpcode = instructionBits.substring( 4 );
+                int rs = Integer.parseInt( bitsWithoutOpcode.substring( 0, 5 ), 2 );
+                int rt = Integer.parseInt( bitsWithoutOpcode.substring( 5, 10 ), 2 );
+                int offset = (short) new BigInteger( bitsWithoutOpcode.substring( 10 ), 2 ).intValue();
+                sum += opcode + rs + rt + offset;
+            }
+            else if ( categoryBits.equals( "01" ) ) {
+                int rs = Integer.parseUnsignedInt( instructionBits.substring( 0, 5 ), 2 );
+                int rt = Integer.parseUnsignedInt( instructionBits.substring( 5, 10 ), 2 );
+                int opcode = Integer.parseUnsignedInt( instructionBits.substring( 10, 14 ), 2 );
+                int rd = Integer.parseUnsignedInt( instructionBits.substring( 14, 19 ), 2 );
+                sum += opcode + rs + rt + rd;
+            }
+            else {
+                int rs = Integer.parseInt( instructionBits.substring( 0, 5 ), 2 );
+                int rt = Integer.parseInt( instructionBits.substring( 5, 10 ), 2 );
+                int opcode = Integer.parseInt( instructionBits.substring( 10, 14 ), 2 );
+                int immediate = new BigInteger( instructionBits.substring( 14, 30 ), 2 ).intValue();
+                sum += opcode + rs + rt + immediate;
+            }
+        }
+        return sum;
+    }
+}
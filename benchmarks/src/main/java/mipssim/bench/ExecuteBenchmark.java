@@ -0,0 +1,65 @@
+package mipssim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mipssim.api.Machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Execution speed of Simulator.run with tracing off, one synthetic loop per workload, on both the instruction-at-a-time
+ * interpreter and compiled basic blocks. A run mutates the machine, so every invocation gets a freshly loaded
+ * simulator; each program runs for roughly {@code bodySize * iterations} cycles.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ExecuteBenchmark {
+
+    @Param( { "ARITHMETIC", "LOGICAL", "MEMORY", "BRANCH" } )
+    public Workload workload;
+
+    @Param( { "false", "true" } )
+    public boolean blockCompilation;
+
+    @Param( { "64" } )
+    public int bodySize;
+
+    @Param( { "10000" } )
+    public int iterations;
+
+    private String[] lines;
+    private Machine simulator;
+    private final SimulatorBridge.NullChannel channel = new SimulatorBridge.NullChannel();
+
+    @Setup( Level.Trial )
+    public void generate() {
+        lines = ProgramGenerator.loop( workload, bodySize, iterations, 64 );
+    }
+
+    @Setup( Level.Invocation )
+    public void load() {
+        simulator = SimulatorBridge.load( lines, "none" );
+        SimulatorBridge.setBlockCompilation( simulator, blockCompilation );
+    }
+
+    @Benchmark
+    public Object run() {
+        SimulatorBridge.run( simulator, channel );
+        return simulator;
+    }
+}
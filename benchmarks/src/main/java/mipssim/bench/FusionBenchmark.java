@@ -0,0 +1,62 @@
+package mipssim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mipssim.api.Machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Speedup of each superinstruction pattern on its own, on a loop made of nothing but fusable sequences. Compare every
+ * pattern's score against "none"; "lw-add-sw" is what the simulator runs by default, and the other patterns only
+ * belong in that default once they beat "none" here.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class FusionBenchmark {
+
+    @Param( { "none", "addi-bgtz", "lw-add", "lw-add-sw", "all" } )
+    public String fusion;
+
+    @Param( { "16" } )
+    public int dataWords;
+
+    @Param( { "10000" } )
+    public int iterations;
+
+    private String[] lines;
+    private Machine simulator;
+    private final SimulatorBridge.NullChannel channel = new SimulatorBridge.NullChannel();
+
+    @Setup( Level.Trial )
+    public void generate() {
+        lines = ProgramGenerator.fusedLoop( iterations, dataWords );
+    }
+
+    @Setup( Level.Invocation )
+    public void load() {
+        simulator = SimulatorBridge.load( lines, "none" );
+        SimulatorBridge.setFusion( simulator, fusion );
+    }
+
+    @Benchmark
+    public Object run() {
+        SimulatorBridge.run( simulator, channel );
+        return simulator;
+    }
+}
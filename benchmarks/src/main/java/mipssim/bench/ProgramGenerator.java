@@ -0,0 +1,201 @@
+package mipssim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds benchmark programs in the simulator's input format (one 32 character binary line per word). Everything is
+ * driven by a seeded Random, so the same arguments always give the same program and results stay comparable across
+ * commits.
+ */
+final class ProgramGenerator {
+    static final long SEED = 3101;
+
+    private static final int START_ADDRESS = 128;
+    private static final int SPACING = 4;
+
+    //registers with a fixed job in every generated program
+    private static final int COUNTER = 1;
+    private static final int ONE = 2;
+    private static final int FIRST_FREE_REGISTER = 3;
+
+    //opcodes
+    private static final int J = 0, BEQ = 2, BGTZ = 4, BREAK = 5, SW = 6, LW = 7;
+    private static final int ADD = 0, SUB = 1, MUL = 2, AND = 3, OR = 4, XOR = 5, NOR = 6;
+    private static final int ADDI = 0, ANDI = 1, ORI = 2, XORI = 3;
+
+    private ProgramGenerator() {
+    }
+
+    /**
+     * Generates a loop that runs {@code bodySize} instructions of the given workload {@code iterations} times, then
+     * BREAKs. The loop is followed by a data segment of {@code dataWords} random words.
+     */
+    static String[] loop( Workload workload, int bodySize, int iterations, int dataWords ) {
+        if ( iterations < 1 || iterations > Short.MAX_VALUE ) {
+            throw new IllegalArgumentException( "iterations must fit in a 16 bit immediate: " + iterations );
+        }
+        Random random = new Random( SEED );
+        List<Integer> words = new ArrayList<Integer>();
+
+        // the data segment starts right after the BREAK: two setup instructions, the body, SUB, BGTZ and BREAK
+        final int dataStart = START_ADDRESS + ( bodySize + 5 ) * SPACING;
+
+        words.add( category3( ADDI, 0, COUNTER, iterations ) );
+        words.add( category3( ADDI, 0, ONE, 1 ) );
+        final int loopStart = START_ADDRESS + words.size() * SPACING;
+        while ( words.size() - 2 < bodySize ) {
+            int remaining = bodySize - ( words.size() - 2 );
+            switch ( workload ) {
+                case ARITHMETIC:
+                    words.add( arithmetic( random ) );
+                    break;
+                case LOGICAL:
+                    words.add( logical( random ) );
+                    break;
+                case MEMORY:
+                    words.add( memory( random, dataStart, dataWords ) );
+                    break;
+                case BRANCH:
+                    if ( remaining >= 2 ) {
+                        //a branch that skips the instruction right after it, taken or not depending on the data.
+                        words.add( random.nextBoolean()
+                                ? category1( BEQ, freeRegister( random ), freeRegister( random ), 1 )
+                                : category1( BGTZ, freeRegister( random ), 0, 1 ) );
+                    }
+                    words.add( arithmetic( random ) );
+                    break;
+            }
+        }
+        words.add( category2( SUB, COUNTER, ONE, COUNTER ) );
+        final int branchAddress = START_ADDRESS + words.size() * SPACING;
+        words.add( category1( BGTZ, COUNTER, 0, ( loopStart - ( branchAddress + SPACING ) ) / SPACING ) );
+        words.add( category1( BREAK, 0, 0, 0 ) );
+
+        for ( int a = 0; a != dataWords; ++a ) {
+            words.add( random.nextInt( 2001 ) - 1000 );
+        }
+        return toLines( words );
+    }
+
+    /**
+     * Generates a loop made of the sequences the block engine fuses: one LW, ADD, SW per data word (a running sum
+     * written back over the data), closed by an ADDI counter and a BGTZ back to the loop head. Runs {@code iterations}
+     * times, then BREAKs.
+     */
+    static String[] fusedLoop( int iterations, int dataWords ) {
+        if ( iterations < 1 || iterations > Short.MAX_VALUE ) {
+            throw new IllegalArgumentException( "iterations must fit in a 16 bit immediate: " + iterations );
+        }
+        List<Integer> words = new ArrayList<Integer>();
+        final int loaded = FIRST_FREE_REGISTER;
+        final int sum = FIRST_FREE_REGISTER + 1;
+
+        // the data segment starts right after the BREAK: the setup instruction, the body, ADDI, BGTZ and BREAK
+        final int dataStart = START_ADDRESS + ( 1 + dataWords * 3 + 3 ) * SPACING;
+
+        words.add( category3( ADDI, 0, COUNTER, iterations ) );
+        final int loopStart = START_ADDRESS + words.size() * SPACING;
+        for ( int a = 0; a != dataWords; ++a ) {
+            words.add( category1( LW, 0, loaded, dataStart + a * SPACING ) );
+            words.add( category2( ADD, sum, loaded, sum ) );
+            words.add( category1( SW, 0, sum, dataStart + a * SPACING ) );
+        }
+        words.add( category3( ADDI, COUNTER, COUNTER, -1 ) );
+        final int branchAddress = START_ADDRESS + words.size() * SPACING;
+        words.add( category1( BGTZ, COUNTER, 0, ( loopStart - ( branchAddress + SPACING ) ) / SPACING ) );
+        words.add( category1( BREAK, 0, 0, 0 ) );
+
+        Random random = new Random( SEED );
+        for ( int a = 0; a != dataWords; ++a ) {
+            words.add( random.nextInt( 2001 ) - 1000 );
+        }
+        return toLines( words );
+    }
+
+    /**
+     * Generates {@code count} random, valid instruction lines from every category followed by a BREAK. The program is
+     * only meant to be decoded, not run.
+     */
+    static String[] decodeOnly( int count ) {
+        Random random = new Random( SEED );
+        List<Integer> words = new ArrayList<Integer>();
+        final int[] category1Opcodes = { J, BEQ, BGTZ, SW, LW };
+        for ( int a = 0; a != count - 1; ++a ) {
+            int word = random.nextInt();
+            switch ( random.nextInt( 3 ) ) {
+                case 0:
+                    int opcode = category1Opcodes[random.nextInt( category1Opcodes.length )];
+                    words.add( ( word & 0x3FFFFFF ) | ( opcode << 26 ) );
+                    break;
+                case 1:
+                    words.add( ( 1 << 30 ) | ( word & 0x3FF0F800 ) | ( random.nextInt( 7 ) << 16 ) );
+                    break;
+                default:
+                    words.add( ( 2 << 30 ) | ( word & 0x3FF0FFFF ) | ( random.nextInt( 4 ) << 16 ) );
+                    break;
+            }
+        }
+        words.add( category1( BREAK, 0, 0, 0 ) );
+        return toLines( words );
+    }
+
+    /* Instruction Picking */
+
+    private static int freeRegister( Random random ) {
+        return FIRST_FREE_REGISTER + random.nextInt( 32 - FIRST_FREE_REGISTER );
+    }
+
+    private static int arithmetic( Random random ) {
+        int[] opcodes = { ADD, SUB, MUL };
+        if ( random.nextInt( 4 ) == 0 ) {
+            return category3( ADDI, freeRegister( random ), freeRegister( random ), random.nextInt( 201 ) - 100 );
+        }
+        return category2( opcodes[random.nextInt( opcodes.length )], freeRegister( random ), freeRegister( random ), freeRegister( random ) );
+    }
+
+    private static int logical( Random random ) {
+        if ( random.nextInt( 2 ) == 0 ) {
+            int[] opcodes = { ANDI, ORI, XORI };
+            return category3( opcodes[random.nextInt( opcodes.length )], freeRegister( random ), freeRegister( random ), random.nextInt( 0x10000 ) );
+        }
+        int[] opcodes = { AND, OR, XOR, NOR };
+        return category2( opcodes[random.nextInt( opcodes.length )], freeRegister( random ), freeRegister( random ), freeRegister( random ) );
+    }
+
+    private static int memory( Random random, int dataStart, int dataWords ) {
+        int offset = dataStart + random.nextInt( dataWords ) * SPACING;
+        return category1( random.nextBoolean() ? LW : SW, 0, freeRegister( random ), offset );
+    }
+
+    /* Encoding */
+
+    private static int category1( int opcode, int rs, int rt, int immediate ) {
+        return ( opcode << 26 ) | ( rs << 21 ) | ( rt << 16 ) | ( immediate & 0xFFFF );
+    }
+
+    private static int category2( int opcode, int rs, int rt, int rd ) {
+        return ( 1 << 30 ) | ( rs << 25 ) | ( rt << 20 ) | ( opcode << 16 ) | ( rd << 11 );
+    }
+
+    private static int category3( int opcode, int rs, int rt, int immediate ) {
+        return ( 2 << 30 ) | ( rs << 25 ) | ( rt << 20 ) | ( opcode << 16 ) | ( immediate & 0xFFFF );
+    }
+
+    static String toLine( int word ) {
+        StringBuilder builder = new StringBuilder( 32 );
+        for ( int bit = 31; bit >= 0; --bit ) {
+            builder.append( ( ( word >>> bit ) & 1 ) == 0 ? '0' : '1' );
+        }
+        return builder.toString();
+    }
+
+    private static String[] toLines( List<Integer> words ) {
+        String[] lines = new String[words.size()];
+        for ( int a = 0; a != lines.length; ++a ) {
+            lines[a] = toLine( words.get( a ) );
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,240 @@
+package mipssim.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+
+import mipssim.api.Machine;
+
+/**
+ * The benchmarks drive the simulator through mipssim.api.Machine where it can, but also time command line internals
+ * (line parsing, trace modes, fusion, trace formatting) that only exist in the default package, which code in a named
+ * package cannot refer to. Those are reached through these method handles instead. They are static final, which lets
+ * the JIT inline them like ordinary calls.
+ */
+final class SimulatorBridge {
+    private static final MethodHandle PROCESS_LINE;
+    private static final MethodHandle PARSE_BINARY_WORD;
+    private static final MethodHandle SET_TRACE_MODE;
+    private static final MethodHandle PARSE_TRACE_MODE;
+    private static final MethodHandle SET_FUSION;
+    private static final MethodHandle PARSE_FUSION;
+    private static final MethodHandle RUN;
+    private static final MethodHandle APPEND_SIMULATION_STEP;
+    private static final MethodHandle SET_SIMULATION_CHANNEL;
+    private static final MethodHandle NEW_DECODER;
+    private static final MethodHandle DECODER_PROCESS_LINE;
+    private static final MethodHandle DECODER_BUILD;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> simulator = Class.forName( "Simulator" );
+            Class<?> traceMode = Class.forName( "TraceMode" );
+
+            PROCESS_LINE = virtualMethod( lookup, simulator, "processLine", String.class )
+                    .asType( MethodType.methodType( void.class, Machine.class, String.class ) );
+            PARSE_BINARY_WORD = lookup.unreflect( accessible( simulator.getDeclaredMethod( "parseBinaryWord", CharSequence.class ) ) );
+            SET_TRACE_MODE = virtualMethod( lookup, simulator, "setTraceMode", traceMode )
+                    .asType( MethodType.methodType( void.class, Machine.class, Object.class ) );
+            PARSE_TRACE_MODE = lookup.unreflect( accessible( traceMode.getDeclaredMethod( "parse", String.class ) ) )
+                    .asType( MethodType.methodType( Object.class, String.class ) );
+            SET_FUSION = virtualMethod( lookup, simulator, "setFusion", int.class )
+                    .asType( MethodType.methodType( void.class, Machine.class, int.class ) );
+            PARSE_FUSION = lookup.unreflect( accessible( Class.forName( "BasicBlock" ).getDeclaredMethod( "parseFusion", String.class ) ) );
+            RUN = virtualMethod( lookup, simulator, "run", WritableByteChannel.class )
+                    .asType( MethodType.methodType( void.class, Machine.class, WritableByteChannel.class ) );
+            APPEND_SIMULATION_STEP = virtualMethod( lookup, simulator, "appendSimulationStep", int.class, int.class, String.class )
+                    .asType( MethodType.methodType( void.class, Machine.class, int.class, int.class, String.class ) );
+
+            SET_SIMULATION_CHANNEL = virtualMethod( lookup, simulator, "setSimulationChannel", WritableByteChannel.class )
+                    .asType( MethodType.methodType( void.class, Machine.class, WritableByteChannel.class ) );
+
+            Class<?> decoder = Class.forName( "ProgramDecoder" );
+            Constructor<?> decoderConstructor = accessible( decoder.getDeclaredConstructor( ForkJoinPool.class ) );
+            NEW_DECODER = lookup.unreflectConstructor( decoderConstructor )
+                    .asType( MethodType.methodType( Object.class, ForkJoinPool.class ) );
+            DECODER_PROCESS_LINE = virtualMethod( lookup, decoder, "processLine", String.class )
+                    .asType( MethodType.methodType( void.class, Object.class, String.class ) );
+            DECODER_BUILD = virtualMethod( lookup, decoder, "build" )
+                    .asType( MethodType.methodType( Object.class, Object.class ) );
+        } catch ( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+    private SimulatorBridge() {
+    }
+
+    private static MethodHandle virtualMethod( MethodHandles.Lookup lookup, Class<?> owner, String name, Class<?>... parameters )
+            throws ReflectiveOperationException {
+        return lookup.unreflect( accessible( owner.getDeclaredMethod( name, parameters ) ) );
+    }
+
+    private static <T extends AccessibleObject> T accessible( T member ) {
+        member.setAccessible( true );
+        return member;
+    }
+
+    private static RuntimeException rethrow( Throwable throwable ) {
+        if ( throwable instanceof RuntimeException ) {
+            return (RuntimeException) throwable;
+        }
+        if ( throwable instanceof Error ) {
+            throw (Error) throwable;
+        }
+        return new IllegalStateException( throwable );
+    }
+
+    /* Simulator Operations */
+
+    static Machine newSimulator() {
+        return Machine.create();
+    }
+
+    /**
+     * @return a new simulator that has already processed every line and uses the given trace mode.
+     */
+    static Machine load( String[] lines, String traceMode ) {
+        Machine simulator = newSimulator();
+        for ( String line : lines ) {
+            processLine( simulator, line );
+        }
+        setTraceMode( simulator, traceMode );
+        return simulator;
+    }
+
+    static void processLine( Machine simulator, String line ) {
+        try {
+            PROCESS_LINE.invokeExact( simulator, line );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    /**
+     * Also decodes everything processed so far, if that has not happened yet.
+     */
+    static String getDisassemblyOutput( Machine simulator ) {
+        return simulator.getDisassemblyOutput();
+    }
+
+    static void setRegister( Machine simulator, int registerNumber, int value ) {
+        simulator.setRegister( registerNumber, value );
+    }
+
+    static int parseBinaryWord( CharSequence line ) {
+        try {
+            return (int) PARSE_BINARY_WORD.invokeExact( line );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    static void setTraceMode( Machine simulator, String traceMode ) {
+        try {
+            Object mode = (Object) PARSE_TRACE_MODE.invokeExact( traceMode );
+            SET_TRACE_MODE.invokeExact( simulator, mode );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    static void setBlockCompilation( Machine simulator, boolean blockCompilation ) {
+        simulator.setBlockCompilation( blockCompilation );
+    }
+
+    /**
+     * @param patterns which fusion patterns compiled blocks use, in --fusion syntax.
+     */
+    static void setFusion( Machine simulator, String patterns ) {
+        try {
+            SET_FUSION.invokeExact( simulator, (int) PARSE_FUSION.invokeExact( patterns ) );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    static void run( Machine simulator, WritableByteChannel channel ) {
+        try {
+            RUN.invokeExact( simulator, channel );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    static void setSimulationChannel( Machine simulator, WritableByteChannel channel ) {
+        try {
+            SET_SIMULATION_CHANNEL.invokeExact( simulator, channel );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    static void appendSimulationStep( Machine simulator, int cycle, int address, String instruction ) {
+        try {
+            APPEND_SIMULATION_STEP.invokeExact( simulator, cycle, address, instruction );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    /* Decoder Operations */
+
+    /**
+     * @param pool where chunks are decoded, or null to decode everything on the thread calling build().
+     * @return a new ProgramDecoder.
+     */
+    static Object newDecoder( ForkJoinPool pool ) {
+        try {
+            return (Object) NEW_DECODER.invokeExact( pool );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    static void decodeLine( Object decoder, String line ) {
+        try {
+            DECODER_PROCESS_LINE.invokeExact( decoder, line );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    /**
+     * @return the DecodedProgram.
+     */
+    static Object build( Object decoder ) {
+        try {
+            return (Object) DECODER_BUILD.invokeExact( decoder );
+        } catch ( Throwable t ) {
+            throw rethrow( t );
+        }
+    }
+
+    /**
+     * Swallows everything written to it, so benchmarks measure formatting and not the disk.
+     */
+    static final class NullChannel implements WritableByteChannel {
+        @Override
+        public int write( ByteBuffer buffer ) {
+            int length = buffer.remaining();
+            buffer.position( buffer.limit() );
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
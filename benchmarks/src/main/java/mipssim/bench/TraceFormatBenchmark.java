@@ -0,0 +1,57 @@
+package mipssim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mipssim.api.Machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of formatting a single traced cycle (cycle header, all 32 registers and the data segment) into the simulation
+ * output. The machine state comes from running a memory workload, so registers and data hold realistic values.
+ * appendSimulationStep formats a cycle where nothing changed; appendSimulationStepAfterWrite writes one register first,
+ * like most instructions do, so that row has to be formatted again.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class TraceFormatBenchmark {
+
+    @Param( { "16", "256" } )
+    public int dataWords;
+
+    private Machine simulator;
+    private int cycle = 1;
+
+    @Setup
+    public void setUp() {
+        SimulatorBridge.NullChannel channel = new SimulatorBridge.NullChannel();
+        simulator = SimulatorBridge.load( ProgramGenerator.loop( Workload.MEMORY, 32, 10, dataWords ), "none" );
+        SimulatorBridge.run( simulator, channel );
+        SimulatorBridge.setSimulationChannel( simulator, channel );
+    }
+
+    @Benchmark
+    public void appendSimulationStep() {
+        SimulatorBridge.appendSimulationStep( simulator, cycle++, 136, "ADD R14, R7, R21" );
+    }
+
+    @Benchmark
+    public void appendSimulationStepAfterWrite() {
+        SimulatorBridge.setRegister( simulator, 14, cycle );
+        SimulatorBridge.appendSimulationStep( simulator, cycle++, 136, "ADD R14, R7, R21" );
+    }
+}
@@ -0,0 +1,8 @@
+package mipssim.bench;
+
+/**
+ * The kind of instructions that make up the body of a generated benchmark loop.
+ */
+public enum Workload {
+    ARITHMETIC, LOGICAL, MEMORY, BRANCH
+}
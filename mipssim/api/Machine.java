@@ -0,0 +1,154 @@
+package mipssim.api;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A simulated machine that other code can load a program into and drive one step at a time, without any of the
+ * command line's files. The simulator itself lives in the default package (so a bare "javac MIPSsim.java" still builds
+ * it), which code in a named package cannot refer to; this interface is how that code reaches it.
+ *
+ * Machines are not thread safe, but any number of them can run side by side.
+ */
+public interface Machine {
+    /** Lines of '0' and '1' characters, one word per line. */
+    String FORMAT_TEXT = "text";
+    /** Raw 4 byte words, most significant byte first. */
+    String FORMAT_BIG_ENDIAN = "big-endian";
+    /** Raw 4 byte words, least significant byte first. */
+    String FORMAT_LITTLE_ENDIAN = "little-endian";
+
+    /**
+     * @return a new machine with nothing loaded yet.
+     */
+    static Machine create() {
+        try {
+            //the simulator implements this interface, but can only be found by name from here
+            Constructor<?> constructor = Class.forName( "Simulator" ).getDeclaredConstructor();
+            constructor.setAccessible( true );
+            return (Machine) constructor.newInstance();
+        } catch ( ReflectiveOperationException e ) {
+            throw new IllegalStateException( "The simulator is not on the class path", e );
+        }
+    }
+
+    /* Loading. A machine only ever holds one program. */
+
+    /**
+     * Decodes and loads a program image held in memory.
+     * @param format FORMAT_TEXT, FORMAT_BIG_ENDIAN or FORMAT_LITTLE_ENDIAN.
+     */
+    void load( byte[] image, String format ) throws IOException;
+
+    /**
+     * Same as load( byte[], String ). The buffer's position is left alone.
+     */
+    void load( ByteBuffer image, String format ) throws IOException;
+
+    /**
+     * Decodes and loads a program file, the same way the command line does.
+     */
+    void load( Path path, String format ) throws IOException;
+
+    /* Running. Nothing is traced, and a fault stops the machine on the instruction that caused it. */
+
+    /**
+     * Runs up to count more instructions.
+     * @return how many ran, fewer than count only once the program has finished.
+     * @throws MachineFault if an instruction cannot run.
+     */
+    int step( int count );
+
+    /**
+     * Runs until the given cycle has run, or the program finishes.
+     * @return whether the cycle was reached.
+     * @throws MachineFault if an instruction cannot run.
+     */
+    boolean runUntilCycle( int cycle );
+
+    /**
+     * Runs until the program counter reaches the address, the program finishes or maxCycles more cycles have run,
+     * whichever comes first. Nothing runs if the program counter is already there.
+     * @return whether the address was reached.
+     * @throws MachineFault if an instruction cannot run.
+     */
+    boolean runUntilAddress( int address, int maxCycles );
+
+    /**
+     * @return whether the program has run its BREAK.
+     */
+    boolean isFinished();
+
+    /**
+     * @param blockCompilation whether stepping may run whole compiled basic blocks where they cannot go past the
+     * requested stop (the default), or only ever one instruction at a time. Results are the same either way.
+     */
+    void setBlockCompilation( boolean blockCompilation );
+
+    /**
+     * Adds a listener that hears about every instruction, memory write and branch. Machines with listeners always run
+     * one instruction at a time.
+     */
+    void addListener( MachineListener listener );
+
+    /* State */
+
+    /**
+     * @return the address of the next instruction to run. After a fault, the address the fault names.
+     */
+    int getProgramCounter();
+
+    /**
+     * @return how many cycles have run so far, which is how many instructions have.
+     */
+    int getCycleCount();
+
+    /**
+     * @param registerNumber 0 to 31.
+     * @throws IllegalArgumentException if there is no such register.
+     */
+    int getRegister( int registerNumber );
+
+    /**
+     * @param registerNumber 0 to 31.
+     * @throws IllegalArgumentException if there is no such register.
+     */
+    void setRegister( int registerNumber, int value );
+
+    /**
+     * @return a copy of all 32 registers.
+     */
+    int[] getRegisters();
+
+    /**
+     * Reads a data word. Unlike the program's own LW, it is not counted as an access by anything watching.
+     */
+    int readMemory( int memoryAddress );
+
+    /**
+     * Writes a data word, without it counting as an access.
+     */
+    void writeMemory( int memoryAddress, int value );
+
+    /**
+     * @return a copy of data memory, starting at getMemoryStartAddress().
+     */
+    int[] getData();
+
+    /**
+     * @return the address of the first data word, just past the BREAK.
+     */
+    int getMemoryStartAddress();
+
+    /**
+     * @return how many words of data memory there are.
+     */
+    int getMemorySize();
+
+    /**
+     * @return the program's disassembly, exactly as the command line writes it to disassembly.txt.
+     */
+    String getDisassemblyOutput();
+}
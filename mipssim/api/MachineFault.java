@@ -0,0 +1,30 @@
+package mipssim.api;
+
+/**
+ * Anything that stops a Machine part way: an instruction that cannot run, a bad address or a jump to somewhere that
+ * holds no instruction. Faults are precise: everything before the faulting instruction has happened and nothing after
+ * it has.
+ */
+public abstract class MachineFault extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    protected MachineFault( String message ) {
+        super( message );
+    }
+
+    /**
+     * @return what went wrong, without where.
+     */
+    public abstract String getReason();
+
+    /**
+     * @return the address of the faulting instruction, or for a fetch from somewhere that holds no instruction, that
+     * address.
+     */
+    public abstract int getProgramCounter();
+
+    /**
+     * @return the cycle the faulting instruction would have completed in.
+     */
+    public abstract int getCycle();
+}
@@ -0,0 +1,32 @@
+package mipssim.api;
+
+/**
+ * Hears about a Machine as it runs. Every method does nothing unless it is overridden, so only implement what you
+ * need.
+ */
+public interface MachineListener {
+    /**
+     * Called after every instruction has run, once its memoryWritten() or branchResolved() call is done.
+     * @param address the instruction's address.
+     * @param instruction its disassembly, such as "ADD R1, R2, R3".
+     * @param cycle the cycle it ran in.
+     */
+    default void instructionRetired( int address, String instruction, int cycle ) {
+    }
+
+    /**
+     * Called for every SW, after the word has been written.
+     */
+    default void memoryWritten( int address, int value ) {
+    }
+
+    /**
+     * Called after every BEQ, BGTZ and J.
+     * @param address the branch's address.
+     * @param taken whether the branch's condition held, even if it only went to the next instruction. A J is always
+     * taken.
+     * @param nextAddress where execution goes next.
+     */
+    default void branchResolved( int address, boolean taken, int nextAddress ) {
+    }
+}
@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class BatchRunnerTest {
+    @TempDir
+    Path directory;
+
+    private void writeInput( Path inputs, String name, int... words ) throws IOException {
+        Files.write( inputs.resolve( name ), TestPrograms.text( words ).getBytes( StandardCharsets.US_ASCII ) );
+    }
+
+    /**
+     * @return the summary's lines by input file name, split into their columns.
+     */
+    private static Map<String, String[]> readSummary( Path output ) throws IOException {
+        Map<String, String[]> lines = new HashMap<String, String[]>();
+        for ( String line : Files.readAllLines( output.resolve( "summary.txt" ), StandardCharsets.UTF_8 ) ) {
+            String[] columns = line.split( "\t" );
+            if ( !line.startsWith( "input\t" ) && !line.startsWith( "#" ) ) {
+                lines.put( Paths.get( columns[0] ).getFileName().toString(), columns );
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * A faulted program's cycles are the instructions that completed before the fault, whichever engine ran it.
+     * Budgets are the exception: blocks only stop at the first block boundary past them.
+     */
+    @ParameterizedTest
+    @CsvSource( { "blocks, 21", "interpreter, 20" } )
+    void summarizesFaultedRuns( String engine, int runawayCycles ) throws IOException {
+        Path inputs = Files.createDirectory( directory.resolve( "inputs" ) );
+        writeInput( inputs, "ok.txt", TestPrograms.sumLoop() );
+        writeInput( inputs, "illegal.txt",
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ),
+                TestPrograms.illegal(),
+                TestPrograms.addi( 3, 0, 3 ),
+                TestPrograms.BREAK );
+        writeInput( inputs, "unaligned.txt",
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ),
+                TestPrograms.addi( 3, 0, 3 ),
+                TestPrograms.lw( 4, 2, 1 ),
+                TestPrograms.BREAK,
+                0 );
+        writeInput( inputs, "past-break.txt",
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.j( 140 ),
+                TestPrograms.BREAK );
+        writeInput( inputs, "runaway.txt",
+                TestPrograms.addi( 1, 1, 1 ),
+                TestPrograms.addi( 2, 2, 1 ),
+                TestPrograms.j( 128 ),
+                TestPrograms.BREAK );
+
+        Path output = directory.resolve( "output" );
+        CommandLine commandLine = new CommandLine(
+                new String[] { inputs.toString(), "none", "--engine=" + engine, "--max-cycles=20" } );
+        List<Path> found = BatchRunner.findInputs( inputs );
+        new BatchRunner( commandLine, output, 2, new DecodedProgramCache( 8 ) ).run( found );
+        Map<String, String[]> summary = readSummary( output );
+
+        assertEquals( 5, summary.size() );
+        assertSummary( summary, "ok.txt", "ok", 19 );
+        assertSummary( summary, "illegal.txt", "fault", 2 );
+        assertSummary( summary, "unaligned.txt", "fault", 3 );
+        assertSummary( summary, "past-break.txt", "fault", 2 );
+        assertSummary( summary, "runaway.txt", "fault", runawayCycles );
+        assertEquals( "Illegal instruction 0x4000000 at PC 136, cycle 3", summary.get( "illegal.txt" )[5] );
+        assertEquals( "Memory address 3 is not word aligned at PC 140, cycle 4", summary.get( "unaligned.txt" )[5] );
+        assertEquals( "No instruction at address 140 at PC 140, cycle 3", summary.get( "past-break.txt" )[5] );
+
+        List<String> lines = Files.readAllLines( output.resolve( "summary.txt" ), StandardCharsets.UTF_8 );
+        String total = lines.get( lines.size() - 1 );
+        long cycles = 19 + 2 + 3 + 2 + runawayCycles;
+        assertTrue( total.startsWith( "# 5 programs, 4 faulted, 0 failed, " + cycles + " cycles in " ), total );
+    }
+
+    @Test
+    void oneBadProgramDoesNotStopTheBatch() throws IOException {
+        Path inputs = Files.createDirectory( directory.resolve( "inputs" ) );
+        writeInput( inputs, "ok.txt", TestPrograms.sumLoop() );
+        Path manifest = inputs.resolve( "manifest.txt" );
+        Files.write( manifest, "missing.txt\nok.txt\n".getBytes( StandardCharsets.US_ASCII ) );
+
+        Path output = directory.resolve( "output" );
+        CommandLine commandLine = new CommandLine( new String[] { manifest.toString(), "none" } );
+        List<Path> found = BatchRunner.findInputs( manifest );
+        new BatchRunner( commandLine, output, 1, new DecodedProgramCache( 8 ) ).run( found );
+        Map<String, String[]> summary = readSummary( output );
+
+        assertEquals( 2, summary.size() );
+        assertEquals( "failed", summary.get( "missing.txt" )[1] );
+        assertTrue( summary.get( "missing.txt" )[5].contains( "missing.txt" ), summary.get( "missing.txt" )[5] );
+        assertSummary( summary, "ok.txt", "ok", 19 );
+        List<String> lines = Files.readAllLines( output.resolve( "summary.txt" ), StandardCharsets.UTF_8 );
+        String total = lines.get( lines.size() - 1 );
+        assertTrue( total.startsWith( "# 2 programs, 0 faulted, 1 failed, " ), total );
+    }
+
+    private static void assertSummary( Map<String, String[]> summary, String input, String status, int cycles ) {
+        String[] columns = summary.get( input );
+        assertEquals( status, columns[1], input );
+        assertEquals( Integer.toString( cycles ), columns[2], input );
+    }
+}
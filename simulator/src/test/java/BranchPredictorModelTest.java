@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class BranchPredictorModelTest {
+    private static final String[] PREDICTORS = { "static-taken", "static-not-taken", "1bit", "2bit", "btb" };
+
+    /**
+     * An inner loop of three inside an outer loop of two. The inner BGTZ goes taken, taken, not taken twice over; the
+     * outer one taken, then not taken.
+     */
+    private static int[] nestedLoops() {
+        return new int[] {
+                TestPrograms.addi( 1, 0, 2 ),       //128
+                TestPrograms.addi( 2, 0, 3 ),       //132 outer:
+                TestPrograms.addi( 2, 2, -1 ),      //136 inner:
+                TestPrograms.bgtz( 2, -2 ),         //140 back to 136
+                TestPrograms.addi( 1, 1, -1 ),      //144
+                TestPrograms.bgtz( 1, -5 ),         //148 back to 132
+                TestPrograms.BREAK };               //152
+    }
+
+    private static BranchPredictorModel run( int[] program ) throws IOException {
+        BranchPredictor[] predictors = new BranchPredictor[PREDICTORS.length];
+        for ( int a = 0; a != predictors.length; ++a ) {
+            predictors[a] = BranchPredictor.forName( PREDICTORS[a], 10 );
+        }
+        BranchPredictorModel model = new BranchPredictorModel( predictors, 2 );
+        Simulator simulator = TestPrograms.load( program );
+        simulator.addObserver( model );
+        TestPrograms.run( simulator, "none" );
+        return model;
+    }
+
+    @Test
+    void scoresEachPredictor() throws IOException {
+        BranchPredictorModel model = run( nestedLoops() );
+
+        assertEquals( 8, model.getBranches() );
+        assertEquals( 5, model.getCorrect( 0 ) );     //every taken branch
+        assertEquals( 3, model.getCorrect( 1 ) );     //every loop exit
+        assertEquals( 2, model.getCorrect( 2 ) );     //only the middle of each inner run
+        assertEquals( 3, model.getCorrect( 3 ) );     //the second inner run starts out taken
+        assertEquals( 3, model.getCorrect( 4 ) );     //like 2bit, once a taken branch has made an entry
+    }
+
+    @Test
+    void reportsEveryBranch() throws IOException {
+        StringWriter writer = new StringWriter();
+        run( nestedLoops() ).writeReport( writer );
+        String report = writer.toString();
+
+        assertTrue( report.contains( "1bit\t2\t6\t25.00%\t12\n" ), report );
+        assertTrue( report.contains( "140\tBGTZ R2, #-8\t6\t4\t66.67%\t33.33%\t33.33%\t50.00%\t50.00%\n" ), report );
+        assertTrue( report.contains( "148\tBGTZ R1, #-20\t2\t1\t50.00%\t50.00%\t0.00%\t0.00%\t0.00%\n" ), report );
+    }
+
+    @Test
+    void onlyCountsConditionalBranches() throws IOException {
+        BranchPredictorModel model = run( new int[] {
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.j( 140 ),
+                TestPrograms.addi( 2, 0, 1 ),
+                TestPrograms.beq( 0, 0, 0 ),
+                TestPrograms.beq( 1, 0, 0 ),
+                TestPrograms.BREAK } );
+
+        //both BEQs go to the next instruction, but only the first one's condition holds, so only it is taken
+        assertEquals( 2, model.getBranches() );
+        assertEquals( 1, model.getCorrect( 0 ) );
+        assertEquals( 1, model.getCorrect( 1 ) );
+    }
+
+    @Test
+    void refusesUnreasonableTableSizes() {
+        for ( int indexBits : new int[] { -1, 0, 21, 31, 32 } ) {
+            assertThrows( IllegalArgumentException.class, () -> BranchPredictor.forName( "2bit", indexBits ) );
+        }
+        assertEquals( "gshare", BranchPredictor.forName( "gshare", 20 ).getName() );
+    }
+}
@@ -0,0 +1,160 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CacheModelTest {
+    private static final int PENALTY = 20;
+
+    private static void read( CacheModel cache, int... addresses ) {
+        for ( int address : addresses ) {
+            cache.memoryAccessed( address, false );
+        }
+    }
+
+    private static void write( CacheModel cache, int... addresses ) {
+        for ( int address : addresses ) {
+            cache.memoryAccessed( address, true );
+        }
+    }
+
+    @Test
+    void hitsWithinABlock() throws IOException {
+        CacheModel cache = new CacheModel( 64, 1, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        read( cache, 0, 4, 8, 12 );
+
+        assertEquals( 3, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 1, TestPrograms.reportValue( cache, "Compulsory misses" ) );
+        assertEquals( PENALTY, cache.getStallCycles() );
+    }
+
+    @Test
+    void splitsMissesThreeWays() throws IOException {
+        //four sets of one line: 0 and 64 fight over set 0, though a fully associative cache would hold both
+        CacheModel directMapped = new CacheModel( 64, 1, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        read( directMapped, 0, 64, 0 );
+
+        assertEquals( 2, TestPrograms.reportValue( directMapped, "Compulsory misses" ) );
+        assertEquals( 0, TestPrograms.reportValue( directMapped, "Capacity misses" ) );
+        assertEquals( 1, TestPrograms.reportValue( directMapped, "Conflict misses" ) );
+
+        //one set of four lines: five blocks do not fit, whatever the mapping
+        CacheModel fullyAssociative = new CacheModel( 64, 4, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        read( fullyAssociative, 0, 16, 32, 48, 64, 0 );
+
+        assertEquals( 5, TestPrograms.reportValue( fullyAssociative, "Compulsory misses" ) );
+        assertEquals( 1, TestPrograms.reportValue( fullyAssociative, "Capacity misses" ) );
+        assertEquals( 0, TestPrograms.reportValue( fullyAssociative, "Conflict misses" ) );
+    }
+
+    @Test
+    void lruKeepsTheRecentlyUsedBlock() {
+        CacheModel lru = new CacheModel( 32, 2, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        read( lru, 0, 16, 0, 32, 0 );
+        assertEquals( 2, lru.getHits() );
+
+        CacheModel fifo = new CacheModel( 32, 2, 16, CacheModel.POLICY_FIFO, true, PENALTY );
+        read( fifo, 0, 16, 0, 32, 0 );
+        assertEquals( 1, fifo.getHits() );
+    }
+
+    @Test
+    void writeBackWritesDirtyBlocksOnEviction() throws IOException {
+        CacheModel cache = new CacheModel( 16, 1, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        write( cache, 0, 4 );
+        read( cache, 16, 0 );
+
+        assertEquals( 1, TestPrograms.reportValue( cache, "Write-backs" ) );
+        assertEquals( 3, cache.getMisses() );
+        assertEquals( ( 3 + 1 ) * PENALTY, cache.getStallCycles() );
+    }
+
+    @Test
+    void writeThroughCountsFirstTouchesAsCompulsory() throws IOException {
+        CacheModel cache = new CacheModel( 64, 1, 16, CacheModel.POLICY_LRU, false, PENALTY );
+        //without write-allocate nothing is brought in, but the first write still touches the block first
+        write( cache, 0, 0 );
+        read( cache, 0, 4 );
+
+        assertEquals( 2, TestPrograms.reportValue( cache, "Write misses" ) );
+        assertEquals( 1, TestPrograms.reportValue( cache, "Read misses" ) );
+        assertEquals( 1, TestPrograms.reportValue( cache, "Compulsory misses" ) );
+        assertEquals( 2, TestPrograms.reportValue( cache, "Memory writes" ) );
+        assertEquals( 1, cache.getHits() );
+        //one block brought in, two words written through
+        assertEquals( 3 * PENALTY, cache.getStallCycles() );
+    }
+
+    /**
+     * The data words at 164 through 176 span two 16 byte blocks, whether the model hears about the data segment as the
+     * program is loaded or when it is added afterwards.
+     */
+    @Test
+    void countsFirstTouchesOfTheDataSegment() throws IOException {
+        CacheModel before = new CacheModel( 64, 1, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        Simulator simulator = new Simulator();
+        simulator.addObserver( before );
+        simulator.load( TestPrograms.decode( TestPrograms.sumLoop() ) );
+        CacheModel after = new CacheModel( 64, 1, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        simulator.addObserver( after );
+        TestPrograms.run( simulator, "none" );
+
+        for ( CacheModel cache : new CacheModel[] { before, after } ) {
+            assertEquals( 2, TestPrograms.reportValue( cache, "Compulsory misses" ) );
+            assertEquals( 2, cache.getMisses() );
+            assertEquals( 2, cache.getHits() );
+        }
+    }
+
+    @Test
+    void missesMatchAReferenceModel() throws IOException {
+        final int lines = 64;
+        CacheModel cache = new CacheModel( lines * 16, 1, 16, CacheModel.POLICY_LRU, true, PENALTY );
+        //the same direct mapped cache, plus the fully associative LRU cache of the same size that tells capacity
+        //misses from conflict misses
+        long[] tags = new long[lines];
+        Arrays.fill( tags, -1 );
+        Map<Integer, Boolean> fullyAssociative = new LinkedHashMap<Integer, Boolean>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Integer, Boolean> eldest ) {
+                return size() > lines;
+            }
+        };
+        boolean[] touched = new boolean[lines * 4];
+        long compulsory = 0;
+        long capacity = 0;
+        long conflict = 0;
+
+        Random random = new Random( 16 );
+        for ( int a = 0; a != 100000; ++a ) {
+            int block = random.nextInt( touched.length );
+            if ( tags[block % lines] != block ) {
+                if ( !touched[block] ) {
+                    ++compulsory;
+                }
+                else if ( !fullyAssociative.containsKey( block ) ) {
+                    ++capacity;
+                }
+                else {
+                    ++conflict;
+                }
+                tags[block % lines] = block;
+            }
+            touched[block] = true;
+            fullyAssociative.put( block, Boolean.TRUE );
+            read( cache, block * 16 );
+        }
+
+        assertEquals( compulsory, TestPrograms.reportValue( cache, "Compulsory misses" ) );
+        assertEquals( capacity, TestPrograms.reportValue( cache, "Capacity misses" ) );
+        assertEquals( conflict, TestPrograms.reportValue( cache, "Conflict misses" ) );
+    }
+}
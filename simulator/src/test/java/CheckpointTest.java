@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CheckpointTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void survivesAWriteAndRead() throws IOException {
+        int[] registers = new int[Checkpoint.REGISTER_COUNT];
+        for ( int index = 0; index != registers.length; ++index ) {
+            registers[index] = index * -3;
+        }
+        byte[] digest = TestPrograms.decode( TestPrograms.sumLoop() ).getDigest();
+        int[] memory = { 10, -20, Integer.MIN_VALUE, 0 };
+        Checkpoint checkpoint = new Checkpoint( digest, 164, 144, 8, registers, memory );
+        Path file = directory.resolve( "run.checkpoint" );
+        checkpoint.write( file );
+        Checkpoint read = Checkpoint.read( file );
+
+        assertArrayEquals( digest, read.getProgramDigest() );
+        assertEquals( 164, read.getMemoryStartAddress() );
+        assertEquals( 144, read.getProgramCounter() );
+        assertEquals( 8, read.getCycle() );
+        assertArrayEquals( registers, read.getRegisters() );
+        assertArrayEquals( memory, read.getMemory() );
+    }
+
+    @Test
+    void reusesTheBufferForSmallerCheckpoints() throws IOException {
+        byte[] digest = TestPrograms.decode( TestPrograms.sumLoop() ).getDigest();
+        int[] registers = new int[Checkpoint.REGISTER_COUNT];
+        Path file = directory.resolve( "run.checkpoint" );
+        ByteBuffer buffer = new Checkpoint( digest, 164, 128, 1, registers, new int[100] ).write( file, null, false );
+        registers[1] = 7;
+        Checkpoint smaller = new Checkpoint( digest, 164, 132, 2, registers, new int[] { 1, 2 } );
+
+        assertSame( buffer, smaller.write( file, buffer, false ) );
+        Checkpoint read = Checkpoint.read( file );
+        assertEquals( 2, read.getCycle() );
+        assertEquals( 7, read.getRegisters()[1] );
+        assertArrayEquals( new int[] { 1, 2 }, read.getMemory() );
+    }
+
+    /**
+     * Checkpoints every few cycles, then resumes from the last one, which is somewhere inside the loop.
+     */
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void resumedRunEndsLikeAnUninterruptedOne( boolean blockCompilation ) throws IOException {
+        Simulator uninterrupted = TestPrograms.load( TestPrograms.sumLoop() );
+        String expected = TestPrograms.run( uninterrupted, "full" );
+
+        Path file = directory.resolve( "periodic.checkpoint" );
+        Simulator first = TestPrograms.load( TestPrograms.sumLoop() );
+        first.setBlockCompilation( blockCompilation );
+        first.setCheckpoint( file, 5 );
+        TestPrograms.run( first, "none" );
+        Checkpoint last = Checkpoint.read( file );
+        assertTrue( last.getCycle() > 5 && last.getCycle() <= first.getCycleCount() + 1, "cycle " + last.getCycle() );
+
+        Simulator resumed = TestPrograms.load( TestPrograms.sumLoop() );
+        resumed.setBlockCompilation( blockCompilation );
+        resumed.restore( last );
+        String output = TestPrograms.run( resumed, "full" );
+
+        //the output starts over at the restored cycle, and carries on exactly as the uninterrupted run did
+        assertTrue( output.startsWith( "--------------------\nCycle:" + last.getCycle() + "\t" ), output );
+        assertTrue( expected.endsWith( output ) );
+        assertEquals( uninterrupted.getCycleCount(), resumed.getCycleCount() );
+        for ( int index = 0; index != Checkpoint.REGISTER_COUNT; ++index ) {
+            assertEquals( uninterrupted.getRegister( index ), resumed.getRegister( index ) );
+        }
+        for ( int address = 164; address != 180; address += 4 ) {
+            assertEquals( uninterrupted.getMemory( address ), resumed.getMemory( address ) );
+        }
+    }
+
+    @Test
+    void refusesACheckpointFromAnotherProgram() {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        Checkpoint checkpoint = simulator.checkpoint();
+
+        Simulator other = TestPrograms.load( TestPrograms.addi( 1, 0, 1 ), TestPrograms.BREAK, 0 );
+        assertThrows( IOException.class, () -> other.restore( checkpoint ) );
+    }
+
+    @Test
+    void refusesACheckpointFromAProgramOfTheSameShape() throws IOException {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        Checkpoint checkpoint = simulator.checkpoint();
+
+        //same instruction count and data segment, one immediate apart
+        int[] changed = TestPrograms.sumLoop();
+        changed[0] = TestPrograms.addi( 1, 0, 2 );
+        Simulator other = TestPrograms.load( changed );
+        assertThrows( IOException.class, () -> other.restore( checkpoint ) );
+        TestPrograms.load( TestPrograms.sumLoop() ).restore( checkpoint );
+    }
+}
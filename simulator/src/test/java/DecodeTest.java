@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class DecodeTest {
+    @Test
+    void parsesFullLinesAsTwosComplement() {
+        assertEquals( -1, Simulator.parseBinaryWord( "11111111111111111111111111111111" ) );
+        assertEquals( Integer.MIN_VALUE, Simulator.parseBinaryWord( "10000000000000000000000000000000" ) );
+        assertEquals( 5, Simulator.parseBinaryWord( "101" ) );
+    }
+
+    @Test
+    void signExtendsArithmeticImmediatesAndOffsets() {
+        InstructionNode[] instructions = TestPrograms.decode(
+                TestPrograms.addi( 1, 0, -5 ),
+                TestPrograms.lw( 2, -4, 3 ),
+                TestPrograms.sw( 2, -32768, 3 ),
+                TestPrograms.beq( 1, 2, -3 ),
+                TestPrograms.bgtz( 1, -1 ),
+                TestPrograms.BREAK ).getInstructions();
+
+        assertEquals( "ADDI R1, R0, #-5", instructions[0].toString() );
+        assertEquals( "LW R2, -4(R3)", instructions[1].toString() );
+        assertEquals( "SW R2, -32768(R3)", instructions[2].toString() );
+        assertEquals( "BEQ R1, R2, #-12", instructions[3].toString() );
+        assertEquals( "BGTZ R1, #-4", instructions[4].toString() );
+    }
+
+    @Test
+    void zeroExtendsLogicalImmediates() {
+        InstructionNode[] instructions = TestPrograms.decode(
+                TestPrograms.andi( 1, 0, 0xFFFF ),
+                TestPrograms.ori( 2, 0, 0x8000 ),
+                TestPrograms.BREAK ).getInstructions();
+
+        assertEquals( "ANDI R1, R0, #65535", instructions[0].toString() );
+        assertEquals( "ORI R2, R0, #32768", instructions[1].toString() );
+    }
+
+    @Test
+    void runsWithExtendedImmediates() throws IOException {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, -5 ),
+                TestPrograms.ori( 2, 0, 0x8000 ),
+                TestPrograms.BREAK );
+        TestPrograms.run( simulator );
+
+        assertEquals( -5, simulator.getRegister( 1 ) );
+        assertEquals( 0x8000, simulator.getRegister( 2 ) );
+    }
+
+    @Test
+    void branchesBackwards() throws IOException {
+        //counts R1 down from 3, adding 2 to R2 each time round, then goes back once to leave by the BGTZ at 144
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 3 ),       //128
+                TestPrograms.addi( 2, 2, 2 ),       //132 loop:
+                TestPrograms.addi( 1, 1, -1 ),      //136
+                TestPrograms.bgtz( 1, -3 ),         //140 back to 132
+                TestPrograms.bgtz( 3, 2 ),          //144 to 156 the second time
+                TestPrograms.addi( 3, 0, 1 ),       //148
+                TestPrograms.beq( 0, 0, -3 ),       //152 back to 144
+                TestPrograms.BREAK );               //156
+        TestPrograms.run( simulator );
+
+        assertEquals( 0, simulator.getRegister( 1 ) );
+        assertEquals( 6, simulator.getRegister( 2 ) );
+        assertEquals( 1, simulator.getRegister( 3 ) );
+    }
+
+    @Test
+    void splitsInstructionsFromDataAtTheBreak() {
+        DecodedProgram program = TestPrograms.decode( TestPrograms.sumLoop() );
+
+        assertEquals( 9, program.getInstructions().length );
+        assertEquals( 164, program.getMemoryStartAddress() );
+        assertArrayEquals( new int[] { 10, -20, 30, 0 }, program.getData() );
+    }
+
+    private static DecodedProgram loadText( String text ) throws IOException {
+        ProgramLoader loader = ProgramLoader.forFormat( ProgramLoader.FORMAT_TEXT );
+        ProgramDecoder decoder = new ProgramDecoder( null );
+        loader.load( ByteBuffer.wrap( text.getBytes( StandardCharsets.US_ASCII ) ), decoder );
+        loader.finish( decoder );
+        return decoder.build();
+    }
+
+    @Test
+    void loadsTextWithBlankLinesAndWithoutAFinalNewline() throws IOException {
+        String text = TestPrograms.text( TestPrograms.addi( 1, 0, 1 ), TestPrograms.BREAK, 7 );
+        DecodedProgram program = loadText( "\r\n" + text.replace( "\n", "\r\n" ).trim() );
+
+        assertEquals( 2, program.getInstructions().length );
+        assertEquals( 132, program.getInstructions()[1].getAddress() );
+    }
+
+    @Test
+    void rejectsLinesThatAreNotAWholeWord() {
+        String text = TestPrograms.text( TestPrograms.addi( 1, 0, 1 ), TestPrograms.BREAK );
+
+        IOException shortLine = assertThrows( IOException.class, () -> loadText( text + "101\n" ) );
+        assertTrue( shortLine.getMessage().startsWith( "Line 3:" ), shortLine.getMessage() );
+        IOException longLine = assertThrows( IOException.class, () -> loadText( "0" + text ) );
+        assertTrue( longLine.getMessage().startsWith( "Line 1:" ), longLine.getMessage() );
+        //the last line is checked as well, newline or not
+        assertThrows( IOException.class, () -> loadText( text + "1" ) );
+    }
+
+    @Test
+    void decodesInParallelChunksLikeOnOneThread() {
+        //several chunks' worth of instructions, with data words that would decode as instructions too
+        Random random = new Random( 20 );
+        int[] words = new int[100000];
+        for ( int index = 0; index != words.length; ++index ) {
+            words[index] = random.nextBoolean()
+                    ? TestPrograms.add( 1 + random.nextInt( 31 ), random.nextInt( 32 ), random.nextInt( 32 ) )
+                    : TestPrograms.addi( 1 + random.nextInt( 31 ), random.nextInt( 32 ), random.nextInt() );
+        }
+        words[60000] = TestPrograms.BREAK;
+        words[70000] = TestPrograms.illegal();
+
+        ProgramDecoder sequential = new ProgramDecoder( null );
+        ForkJoinPool pool = new ForkJoinPool( 4 );
+        ProgramDecoder parallel = new ProgramDecoder( pool );
+        try {
+            for ( int word : words ) {
+                sequential.processWord( word );
+                parallel.processWord( word );
+            }
+            DecodedProgram expected = sequential.build();
+            DecodedProgram actual = parallel.build();
+
+            assertEquals( 60001, actual.getInstructions().length );
+            assertEquals( expected.getDisassembly(), actual.getDisassembly() );
+            assertEquals( expected.getMemoryStartAddress(), actual.getMemoryStartAddress() );
+            assertArrayEquals( expected.getData(), actual.getData() );
+            for ( int index = 0; index != actual.getInstructions().length; ++index ) {
+                assertEquals( TestPrograms.address( index ), actual.getInstructions()[index].getAddress() );
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
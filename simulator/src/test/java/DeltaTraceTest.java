@@ -0,0 +1,42 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DeltaTraceTest {
+    /**
+     * A delta trace, rebuilt, is exactly the simulation.txt the same run would have written.
+     */
+    @ParameterizedTest
+    @CsvSource( { "full, 1", "full, 4", "full, 1024", "every:3, 2", "final, 1024", "pc:136, 1" } )
+    void rebuildsTheTextTrace( String traceMode, int keyframeInterval ) throws IOException {
+        String expected = TestPrograms.run( TestPrograms.load( TestPrograms.sumLoop() ), traceMode );
+
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        simulator.setTraceMode( TraceMode.parse( traceMode ) );
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        simulator.run( new DeltaTrace.Output( delta, keyframeInterval ) );
+
+        StringWriter rebuilt = new StringWriter();
+        new Simulator().replay( new DeltaTrace.Input( new ByteArrayInputStream( delta.toByteArray() ) ), rebuilt );
+        assertEquals( expected, rebuilt.toString() );
+    }
+
+    @Test
+    void isSmallerThanTheTextTrace() throws IOException {
+        String text = TestPrograms.run( TestPrograms.load( TestPrograms.sumLoop() ), "full" );
+
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        simulator.run( new DeltaTrace.Output( delta, DeltaTrace.DEFAULT_KEYFRAME_INTERVAL ) );
+
+        assertTrue( delta.size() * 4 < text.length(), delta.size() + " bytes against " + text.length() );
+    }
+}
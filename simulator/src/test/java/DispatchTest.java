@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Taken jumps and branches go through the PC-indexed instruction array, so they must land on exactly the instruction
+ * the linked list used to find.
+ */
+class DispatchTest {
+    /**
+     * Jumps over two instructions, counts R2 up to R5 in a loop closed by a J and left by a taken BEQ, then takes one
+     * BGTZ and falls through another. Branch offsets are forward only, as the linked list simulator read them.
+     */
+    private static int[] branches() {
+        return new int[] {
+                TestPrograms.addi( 5, 0, 3 ),       //128
+                TestPrograms.j( 144 ),              //132
+                TestPrograms.addi( 1, 0, 1 ),       //136 skipped
+                TestPrograms.addi( 1, 0, 2 ),       //140 skipped
+                TestPrograms.beq( 2, 5, 2 ),        //144 loop: to 156 once R2 reaches 3
+                TestPrograms.addi( 2, 2, 1 ),       //148
+                TestPrograms.j( 144 ),              //152
+                TestPrograms.addi( 3, 0, 5 ),       //156
+                TestPrograms.bgtz( 3, 1 ),          //160 to 168
+                TestPrograms.addi( 1, 0, 3 ),       //164 skipped
+                TestPrograms.bgtz( 1, 1 ),          //168 not taken
+                TestPrograms.addi( 4, 0, 6 ),       //172
+                TestPrograms.BREAK,                 //176
+                7, -1 };                            //180
+    }
+
+    @Test
+    void branchesLandOnTheIndexedInstruction() throws IOException {
+        Simulator simulator = TestPrograms.load( branches() );
+        String output = TestPrograms.run( simulator );
+
+        List<Integer> addresses = new ArrayList<Integer>();
+        for ( String line : output.split( "\n" ) ) {
+            if ( line.startsWith( "Cycle:" ) ) {
+                addresses.add( Integer.valueOf( line.split( "\t" )[1] ) );
+            }
+        }
+        assertArrayEquals( new Integer[] {
+                128, 132, 144, 148, 152, 144, 148, 152, 144, 148, 152, 144, 156, 160, 168, 172, 176 },
+                addresses.toArray( new Integer[addresses.size()] ) );
+        assertEquals( 0, simulator.getRegister( 1 ) );
+        assertEquals( 3, simulator.getRegister( 2 ) );
+        assertEquals( 5, simulator.getRegister( 3 ) );
+        assertEquals( 6, simulator.getRegister( 4 ) );
+    }
+
+    /**
+     * branches-simulation.txt is the simulation.txt the linked list simulator wrote for the same input.
+     */
+    @Test
+    void traceMatchesTheLinkedListSimulator() throws IOException {
+        String output = TestPrograms.run( TestPrograms.load( branches() ) );
+
+        assertEquals( resource( "branches-simulation.txt" ), output );
+    }
+
+    private static String resource( String name ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( InputStream input = DispatchTest.class.getResourceAsStream( "/" + name ) ) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ( ( read = input.read( buffer ) ) != -1 ) {
+                bytes.write( buffer, 0, read );
+            }
+        }
+        return new String( bytes.toByteArray(), StandardCharsets.UTF_8 );
+    }
+}
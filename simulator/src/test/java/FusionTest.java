@@ -0,0 +1,181 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Fused operations must leave the machine exactly as the instructions they replace would: the same registers, memory,
+ * cycle and PC, whether the program runs to its BREAK or faults part way through a fused sequence.
+ */
+class FusionTest {
+    /**
+     * How one run ended.
+     */
+    private static final class Outcome {
+        private final Simulator simulator;
+        private final SimulationFault fault;
+
+        private Outcome( Simulator simulator, SimulationFault fault ) {
+            this.simulator = simulator;
+            this.fault = fault;
+        }
+    }
+
+    /**
+     * Runs the program untraced on compiled blocks with the given fusion patterns.
+     */
+    private static Outcome run( int fusion, int... program ) {
+        Simulator simulator = TestPrograms.load( program );
+        simulator.setFusion( fusion );
+        try {
+            TestPrograms.run( simulator, "none" );
+            return new Outcome( simulator, null );
+        } catch ( SimulationFault fault ) {
+            return new Outcome( simulator, fault );
+        } catch ( IOException e ) {
+            throw new AssertionError( e );
+        }
+    }
+
+    /**
+     * Runs the program without fusion and with every pattern fused, and checks both stop in the same state.
+     * @return the fused run.
+     */
+    private static Outcome runBothWays( int... program ) {
+        Outcome unfused = run( BasicBlock.FUSE_NONE, program );
+        Outcome fused = run( BasicBlock.FUSE_ALL, program );
+
+        assertArrayEquals( unfused.simulator.getRegisters(), fused.simulator.getRegisters() );
+        assertArrayEquals( unfused.simulator.getData(), fused.simulator.getData() );
+        assertEquals( unfused.simulator.getCycleCount(), fused.simulator.getCycleCount() );
+        assertEquals( unfused.simulator.getProgramCounter(), fused.simulator.getProgramCounter() );
+        if ( unfused.fault == null ) {
+            assertNull( fused.fault );
+        } else {
+            assertNotNull( fused.fault );
+            assertEquals( unfused.fault.getClass(), fused.fault.getClass() );
+            assertEquals( unfused.fault.getMessage(), fused.fault.getMessage() );
+        }
+        return fused;
+    }
+
+    /**
+     * A loop with one of each pattern in it: a read-modify-write of one word, one that writes a different word, an LW
+     * and ADD pair, and the ADDI and BGTZ that close the loop.
+     */
+    @Test
+    void everyPatternMatchesTheUnfusedBlocks() {
+        final int data = TestPrograms.address( 13 );
+        Outcome fused = runBothWays(
+                TestPrograms.addi( 2, 0, data ),    //128
+                TestPrograms.addi( 1, 0, 3 ),       //132
+                TestPrograms.lw( 3, 0, 2 ),         //136 loop: LW_ADD_SW_SAME
+                TestPrograms.add( 3, 3, 1 ),        //140
+                TestPrograms.sw( 3, 0, 2 ),         //144
+                TestPrograms.lw( 4, 4, 2 ),         //148 LW_ADD_SW
+                TestPrograms.add( 4, 4, 3 ),        //152
+                TestPrograms.sw( 4, 8, 2 ),         //156
+                TestPrograms.lw( 5, 0, 2 ),         //160 LW_ADD
+                TestPrograms.add( 6, 6, 5 ),        //164
+                TestPrograms.addi( 1, 1, -1 ),      //168 ADDI_BGTZ
+                TestPrograms.bgtz( 1, -10 ),        //172 back to 136
+                TestPrograms.BREAK,                 //176
+                1, 2, 3 );                          //180
+
+        assertNull( fused.fault );
+        assertArrayEquals( new int[] { 7, 2, 9 }, fused.simulator.getData() );
+        assertEquals( 4 + 6 + 7, fused.simulator.getRegister( 6 ) );
+    }
+
+    /**
+     * The LW of a same-word read-modify-write faults before anything in the sequence has happened.
+     */
+    @Test
+    void faultInTheLoadOfASameWordSequence() {
+        final int data = TestPrograms.address( 6 );
+        Outcome fused = runBothWays(
+                TestPrograms.addi( 3, 0, 5 ),       //128
+                TestPrograms.addi( 2, 0, data + 1 ),    //132
+                TestPrograms.lw( 3, 0, 2 ),         //136 misaligned
+                TestPrograms.add( 3, 3, 3 ),        //140
+                TestPrograms.sw( 3, 0, 2 ),         //144
+                TestPrograms.BREAK,                 //148
+                7 );                                //152
+
+        assertNotNull( fused.fault );
+        assertEquals( 136, fused.fault.getProgramCounter() );
+        assertEquals( 3, fused.fault.getCycle() );
+        assertEquals( 5, fused.simulator.getRegister( 3 ) );
+        assertArrayEquals( new int[] { 7 }, fused.simulator.getData() );
+    }
+
+    /**
+     * The SW of a read-modify-write of another word faults after the LW and ADD have retired, and the fault names the
+     * SW.
+     */
+    @Test
+    void faultInTheStoreOfASequence() {
+        final int data = TestPrograms.address( 5 );
+        Outcome fused = runBothWays(
+                TestPrograms.addi( 2, 0, data ),    //128
+                TestPrograms.lw( 3, 0, 2 ),         //132
+                TestPrograms.add( 4, 3, 3 ),        //136
+                TestPrograms.sw( 4, 40, 2 ),        //140 past the data segment
+                TestPrograms.BREAK,                 //144
+                7 );                                //148
+
+        assertNotNull( fused.fault );
+        assertEquals( 140, fused.fault.getProgramCounter() );
+        assertEquals( 4, fused.fault.getCycle() );
+        assertEquals( 140, fused.simulator.getProgramCounter() );
+        assertEquals( 7, fused.simulator.getRegister( 3 ) );
+        assertEquals( 14, fused.simulator.getRegister( 4 ) );
+        assertArrayEquals( new int[] { 7 }, fused.simulator.getData() );
+    }
+
+    /**
+     * The LW replaces the base with the address of the next word, so the SW writes that word, not the one read.
+     */
+    @Test
+    void loadThatWritesTheBaseIsNotTheSameWord() {
+        final int data = TestPrograms.address( 6 );
+        Outcome fused = runBothWays(
+                TestPrograms.addi( 3, 0, 5 ),       //128
+                TestPrograms.addi( 2, 0, data ),    //132
+                TestPrograms.lw( 2, 0, 2 ),         //136
+                TestPrograms.add( 3, 3, 3 ),        //140
+                TestPrograms.sw( 3, 0, 2 ),         //144
+                TestPrograms.BREAK,                 //148
+                data + 4, 0 );                      //152
+
+        assertArrayEquals( new int[] { data + 4, 10 }, fused.simulator.getData() );
+    }
+
+    /**
+     * The ADD moves the base on by the word it read, so the SW writes the next word, not the one read.
+     */
+    @Test
+    void addThatWritesTheBaseIsNotTheSameWord() {
+        final int data = TestPrograms.address( 5 );
+        Outcome fused = runBothWays(
+                TestPrograms.addi( 2, 0, data ),    //128
+                TestPrograms.lw( 3, 0, 2 ),         //132
+                TestPrograms.add( 2, 2, 3 ),        //136
+                TestPrograms.sw( 3, 0, 2 ),         //140
+                TestPrograms.BREAK,                 //144
+                4, 0 );                             //148
+
+        assertArrayEquals( new int[] { 4, 4 }, fused.simulator.getData() );
+        assertEquals( data + 4, fused.simulator.getRegister( 2 ) );
+    }
+
+    @Test
+    void defaultLeavesThePairsUnfused() {
+        assertEquals( BasicBlock.FUSE_LW_ADD_SW, BasicBlock.FUSE_DEFAULT );
+        assertEquals( BasicBlock.FUSE_DEFAULT, BasicBlock.parseFusion( BasicBlock.FUSION_DEFAULT ) );
+    }
+}
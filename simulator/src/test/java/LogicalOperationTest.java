@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * The native logical operations give exactly what the bit by bit compare() they replaced gives.
+ */
+class LogicalOperationTest {
+    private static final int[] BOUNDARY_OPERANDS = { 0, 1, -1, 0x7FFF, 0x8000, 0xFFFF, 0x10000, Integer.MAX_VALUE,
+            Integer.MIN_VALUE, 0x55555555, 0xAAAAAAAA };
+
+    static IntStream logicalInstructions() {
+        return IntStream.of(
+                TestPrograms.and( 1, 2, 3 ),
+                TestPrograms.or( 1, 2, 3 ),
+                TestPrograms.xor( 1, 2, 3 ),
+                TestPrograms.nor( 1, 2, 3 ),
+                TestPrograms.andi( 1, 2, 0 ),
+                TestPrograms.ori( 1, 2, 0 ),
+                TestPrograms.xori( 1, 2, 0 ) );
+    }
+
+    @ParameterizedTest
+    @MethodSource( "logicalInstructions" )
+    void matchesTheReferenceOperation( int word ) {
+        CompareInstruction operation = (CompareInstruction) InstructionCategory.getInstructionCategory(
+                Simulator.INSTRUCTION_START_ADDRESS, word ).getInstruction();
+
+        for ( int value1 : BOUNDARY_OPERANDS ) {
+            for ( int value2 : BOUNDARY_OPERANDS ) {
+                assertMatches( operation, value1, value2 );
+            }
+        }
+        Random random = new Random( word );
+        for ( int a = 0; a != 4096; ++a ) {
+            assertMatches( operation, random.nextInt(), random.nextInt() );
+        }
+    }
+
+    private static void assertMatches( CompareInstruction operation, int value1, int value2 ) {
+        assertEquals( operation.referenceOperation( value1, value2 ), operation.performOperation( value1, value2 ),
+                operation + " on " + value1 + " and " + value2 );
+    }
+
+    @Test
+    void runsOnNegativeRegisters() throws IOException {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, -1 ),
+                TestPrograms.addi( 2, 0, -4 ),
+                TestPrograms.andi( 3, 1, 0xFFFF ),
+                TestPrograms.and( 4, 1, 2 ),
+                TestPrograms.nor( 5, 2, 0 ),
+                TestPrograms.xori( 6, 2, 0x8000 ),
+                TestPrograms.BREAK );
+        TestPrograms.run( simulator );
+
+        assertEquals( 0xFFFF, simulator.getRegister( 3 ) );
+        assertEquals( -4, simulator.getRegister( 4 ) );
+        assertEquals( 3, simulator.getRegister( 5 ) );
+        assertEquals( -4 ^ 0x8000, simulator.getRegister( 6 ) );
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class MemoryTest {
+    @Test
+    void loadsAndStoresWords() throws IOException {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        TestPrograms.run( simulator );
+
+        assertEquals( 20, simulator.getRegister( 4 ) );
+        assertEquals( 10, simulator.getMemory( 164 ) );
+        assertEquals( -20, simulator.getMemory( 168 ) );
+        assertEquals( 30, simulator.getMemory( 172 ) );
+        assertEquals( 20, simulator.getMemory( 176 ) );
+    }
+
+    @Test
+    void growsWhileTheDataSegmentLoads() {
+        int[] words = new int[1 + 1000];
+        words[0] = TestPrograms.BREAK;
+        for ( int index = 1; index != words.length; ++index ) {
+            words[index] = -index;
+        }
+        Simulator simulator = TestPrograms.load( words );
+
+        for ( int index = 1; index != words.length; ++index ) {
+            assertEquals( -index, simulator.getMemory( TestPrograms.address( index ) ) );
+        }
+        simulator.setMemory( TestPrograms.address( 1000 ), 7 );
+        assertEquals( 7, simulator.getMemory( TestPrograms.address( 1000 ) ) );
+    }
+
+    @Test
+    void readsAndWritesFromOutsideTheProgram() {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        simulator.writeMemory( 164, Integer.MIN_VALUE );
+        simulator.writeMemory( 168, -1 );
+        simulator.step( 100 );
+
+        assertEquals( Integer.MIN_VALUE + 29, simulator.getRegister( 4 ) );
+        assertEquals( Integer.MIN_VALUE + 29, simulator.readMemory( 176 ) );
+    }
+
+    @Test
+    void dataIsACopy() {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        simulator.getData()[0] = 99;
+
+        assertEquals( 10, simulator.readMemory( 164 ) );
+        assertEquals( 4, simulator.getMemorySize() );
+        assertEquals( 164, simulator.getMemoryStartAddress() );
+    }
+
+    @Test
+    void checksEveryAddress() {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+
+        assertEquals( 160, rejectedAddress( () -> simulator.getMemory( 160 ) ) );
+        assertEquals( 180, rejectedAddress( () -> simulator.getMemory( 180 ) ) );
+        assertEquals( 166, rejectedAddress( () -> simulator.setMemory( 166, 1 ) ) );
+        assertEquals( -4, rejectedAddress( () -> simulator.setMemory( -4, 1 ) ) );
+    }
+
+    private static int rejectedAddress( Executable access ) {
+        return assertThrows( MemoryAccessException.class, access ).getAddress();
+    }
+}
@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Cycle counts for short programs, worked out by hand from the stage each instruction enters in each cycle.
+ */
+class PipelineModelTest {
+    private static PipelineModel run( boolean forwarding, int... program ) throws IOException {
+        PipelineModel model = new PipelineModel( forwarding );
+        Simulator simulator = TestPrograms.load( program );
+        simulator.addObserver( model );
+        TestPrograms.run( simulator, "none" );
+        return model;
+    }
+
+    @Test
+    void independentInstructionsNeverStall() throws IOException {
+        PipelineModel model = run( true,
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ),
+                TestPrograms.addi( 3, 0, 3 ),
+                TestPrograms.BREAK );
+
+        //four instructions, plus four cycles to drain the last one
+        assertEquals( 8, model.getCycles() );
+        assertEquals( 2.0, model.getCyclesPerInstruction(), 1e-9 );
+        assertEquals( 0, TestPrograms.reportValue( model, "Data stalls" ) );
+        assertEquals( 0, TestPrograms.reportValue( model, "Control stalls" ) );
+    }
+
+    @Test
+    void forwardingHidesADependency() throws IOException {
+        int[] program = {
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.add( 2, 1, 1 ),
+                TestPrograms.BREAK };
+
+        PipelineModel forwarded = run( true, program );
+        assertEquals( 7, forwarded.getCycles() );
+        assertEquals( 0, TestPrograms.reportValue( forwarded, "Data stalls" ) );
+
+        //without forwarding, the ADD waits in ID until the ADDI has written back
+        PipelineModel stalled = run( false, program );
+        assertEquals( 9, stalled.getCycles() );
+        assertEquals( 2, TestPrograms.reportValue( stalled, "Data stalls" ) );
+    }
+
+    @Test
+    void loadUseStallsOnceEvenWithForwarding() throws IOException {
+        PipelineModel model = run( true,
+                TestPrograms.lw( 1, 140, 0 ),
+                TestPrograms.add( 2, 1, 1 ),
+                TestPrograms.BREAK,
+                5 );
+
+        assertEquals( 8, model.getCycles() );
+        assertEquals( 1, TestPrograms.reportValue( model, "Data stalls" ) );
+        assertEquals( 1, TestPrograms.reportValue( model, "Load-use stalls" ) );
+    }
+
+    @Test
+    void jumpsCostOneCycleAndTakenBranchesTwo() throws IOException {
+        PipelineModel jump = run( true,
+                TestPrograms.j( 136 ),
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.BREAK );
+        assertEquals( 7, jump.getCycles() );
+        assertEquals( 1, TestPrograms.reportValue( jump, "Control stalls" ) );
+        assertEquals( 1, TestPrograms.reportValue( jump, "Jumps" ) );
+
+        PipelineModel branch = run( true,
+                TestPrograms.beq( 0, 0, 1 ),
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.BREAK );
+        assertEquals( 8, branch.getCycles() );
+        assertEquals( 2, TestPrograms.reportValue( branch, "Control stalls" ) );
+        assertEquals( 1, TestPrograms.reportValue( branch, "Taken branches" ) );
+    }
+
+    @Test
+    void aTakenBranchToTheNextInstructionStillFlushes() throws IOException {
+        PipelineModel taken = run( true,
+                TestPrograms.beq( 0, 0, 0 ),
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.BREAK );
+        assertEquals( 9, taken.getCycles() );
+        assertEquals( 2, TestPrograms.reportValue( taken, "Control stalls" ) );
+        assertEquals( 1, TestPrograms.reportValue( taken, "Taken branches" ) );
+
+        PipelineModel notTaken = run( true,
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.beq( 1, 0, 0 ),
+                TestPrograms.BREAK );
+        assertEquals( 7, notTaken.getCycles() );
+        assertEquals( 0, TestPrograms.reportValue( notTaken, "Taken branches" ) );
+    }
+
+    @Test
+    void timesTheSumLoop() throws IOException {
+        PipelineModel model = run( true, TestPrograms.sumLoop() );
+
+        //19 instructions; each LW feeds the ADD right behind it, and the BGTZ is taken twice
+        assertEquals( 3, TestPrograms.reportValue( model, "Load-use stalls" ) );
+        assertEquals( 4, TestPrograms.reportValue( model, "Control stalls" ) );
+        assertEquals( 19 + 4 + 3 + 4, model.getCycles() );
+    }
+}
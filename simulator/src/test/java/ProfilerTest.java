@@ -0,0 +1,33 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ProfilerTest {
+    /**
+     * Both BEQs go to the next instruction. Only the first one's condition holds, and only it counts as taken, on
+     * either engine.
+     */
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void countsBranchesByTheirCondition( boolean blockCompilation ) throws IOException {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 1 ),       //128
+                TestPrograms.beq( 0, 0, 0 ),        //132 taken
+                TestPrograms.beq( 1, 0, 0 ),        //136 not taken
+                TestPrograms.BREAK );
+        simulator.setBlockCompilation( blockCompilation );
+        Profiler profiler = new Profiler();
+        simulator.setProfiler( profiler );
+        TestPrograms.run( simulator, "none" );
+        StringWriter writer = new StringWriter();
+        profiler.writeReport( writer );
+        String report = writer.toString();
+
+        assertTrue( report.contains( "\n132\tBEQ R0, R0, #0\t1\t0\n" ), report );
+        assertTrue( report.contains( "\n136\tBEQ R1, R0, #0\t0\t1\n" ), report );
+    }
+}
@@ -0,0 +1,210 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Every fault names the PC and cycle it happened in, and leaves the machine exactly as it was before the faulting
+ * instruction, on either engine.
+ */
+class SimulationFaultTest {
+    /**
+     * Runs the program untraced on the interpreter or the block engine.
+     * @return the fault it stopped with.
+     */
+    private static <T extends SimulationFault> T runToFault( Class<T> type, boolean blockCompilation,
+            Simulator simulator ) {
+        simulator.setBlockCompilation( blockCompilation );
+        T fault = assertThrows( type, () -> TestPrograms.run( simulator, "none" ) );
+        //precise: the faulting instruction never completed
+        assertEquals( fault.getCycle() - 1, simulator.getCycleCount() );
+        assertEquals( fault.getProgramCounter(), simulator.getProgramCounter() );
+        return fault;
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void illegalInstructionInTheMiddleOfABlock( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ),
+                TestPrograms.illegal(),
+                TestPrograms.addi( 3, 0, 3 ),
+                TestPrograms.BREAK );
+        IllegalInstructionFault fault = runToFault( IllegalInstructionFault.class, blockCompilation, simulator );
+
+        assertEquals( 136, fault.getProgramCounter() );
+        assertEquals( 3, fault.getCycle() );
+        assertEquals( TestPrograms.illegal(), fault.getInstructionWord() );
+        assertEquals( 2, simulator.getRegister( 2 ) );
+        assertEquals( 0, simulator.getRegister( 3 ) );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void misalignedLoad( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.lw( 2, 2, 1 ),
+                TestPrograms.BREAK,
+                7 );
+        MemoryAccessException fault = runToFault( MemoryAccessException.class, blockCompilation, simulator );
+
+        assertEquals( 132, fault.getProgramCounter() );
+        assertEquals( 2, fault.getCycle() );
+        assertEquals( 3, fault.getAddress() );
+        assertEquals( "Memory address 3 is not word aligned at PC 132, cycle 2", fault.getMessage() );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void storeOutsideTheDataSegment( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ),
+                TestPrograms.sw( 2, TestPrograms.address( 5 ), 0 ),
+                TestPrograms.BREAK,
+                7 );
+        MemoryAccessException fault = runToFault( MemoryAccessException.class, blockCompilation, simulator );
+
+        assertEquals( 136, fault.getProgramCounter() );
+        assertEquals( 3, fault.getCycle() );
+        assertEquals( 148, fault.getAddress() );
+        assertEquals( 7, simulator.getData()[0] );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void jumpPastTheBreak( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.j( 140 ),
+                TestPrograms.BREAK );
+        InstructionFetchFault fault = runToFault( InstructionFetchFault.class, blockCompilation, simulator );
+
+        assertEquals( 140, fault.getProgramCounter() );
+        assertEquals( 3, fault.getCycle() );
+        assertEquals( 1, simulator.getRegister( 1 ) );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void branchIntoTheDataSegment( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.beq( 0, 0, 2 ),
+                TestPrograms.BREAK,
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ) );
+        InstructionFetchFault fault = runToFault( InstructionFetchFault.class, blockCompilation, simulator );
+
+        assertEquals( 140, fault.getProgramCounter() );
+        assertEquals( 2, fault.getCycle() );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void branchBelowTheFirstInstruction( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.beq( 0, 0, -10 ),
+                TestPrograms.BREAK );
+        InstructionFetchFault fault = runToFault( InstructionFetchFault.class, blockCompilation, simulator );
+
+        assertEquals( 92, fault.getProgramCounter() );
+        assertEquals( 2, fault.getCycle() );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void jumpToTheBreakFinishesNormally( boolean blockCompilation ) throws IOException {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.j( 136 ),
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.BREAK );
+        simulator.setBlockCompilation( blockCompilation );
+        TestPrograms.run( simulator, "none" );
+
+        assertTrue( simulator.isFinished() );
+        assertEquals( 2, simulator.getCycleCount() );
+        assertEquals( 0, simulator.getRegister( 1 ) );
+    }
+
+    /* Budgets */
+
+    private static int[] infiniteLoop() {
+        return new int[] {
+                TestPrograms.addi( 1, 1, 1 ),
+                TestPrograms.addi( 2, 2, 1 ),
+                TestPrograms.j( 128 ),
+                TestPrograms.BREAK };
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    void finalTraceShowsTheStateBeforeTheFault( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load(
+                TestPrograms.addi( 1, 0, 1 ),
+                TestPrograms.addi( 2, 0, 2 ),
+                TestPrograms.illegal(),
+                TestPrograms.BREAK );
+        simulator.setBlockCompilation( blockCompilation );
+        simulator.setTraceMode( TraceMode.parse( "final" ) );
+        StringWriter output = new StringWriter();
+        assertThrows( IllegalInstructionFault.class, () -> simulator.run( output ) );
+        String trace = output.toString();
+
+        assertTrue( trace.startsWith( "--------------------\nCycle:2\t132\tADDI R2, R0, #2\n" ), trace );
+        assertTrue( trace.contains( "R00:\t0\t1\t2\t0" ), trace );
+    }
+
+    @Test
+    void cycleBudgetStopsTheInterpreterOnTheCycle() {
+        Simulator simulator = TestPrograms.load( infiniteLoop() );
+        simulator.setBudget( 10, 0 );
+        BudgetExceededFault fault = runToFault( BudgetExceededFault.class, false, simulator );
+
+        assertEquals( 11, fault.getCycle() );
+        assertEquals( 132, fault.getProgramCounter() );
+        assertEquals( 4, simulator.getRegister( 1 ) );
+        assertEquals( 3, simulator.getRegister( 2 ) );
+    }
+
+    @Test
+    void cycleBudgetStopsBlocksAtTheNextBoundary() {
+        Simulator simulator = TestPrograms.load( infiniteLoop() );
+        simulator.setBudget( 10, 0 );
+        BudgetExceededFault fault = runToFault( BudgetExceededFault.class, true, simulator );
+
+        assertEquals( 13, fault.getCycle() );
+        assertEquals( 128, fault.getProgramCounter() );
+        assertEquals( 4, simulator.getRegister( 1 ) );
+        assertEquals( 4, simulator.getRegister( 2 ) );
+    }
+
+    @Test
+    void programThatFinishesWithinItsBudgetIsNotStopped() throws IOException {
+        Simulator simulator = TestPrograms.load( TestPrograms.sumLoop() );
+        simulator.setBudget( 19, 0 );
+        TestPrograms.run( simulator, "none" );
+
+        assertTrue( simulator.isFinished() );
+        assertEquals( 19, simulator.getCycleCount() );
+    }
+
+    @ParameterizedTest
+    @ValueSource( booleans = { false, true } )
+    @Timeout( 10 )
+    void timeBudgetStopsARunawayLoop( boolean blockCompilation ) {
+        Simulator simulator = TestPrograms.load( infiniteLoop() );
+        simulator.setBudget( 0, 50 );
+        BudgetExceededFault fault = runToFault( BudgetExceededFault.class, blockCompilation, simulator );
+
+        assertEquals( "Time budget of 50 ms used up", fault.getReason() );
+    }
+}
@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Builds small programs for the tests, one instruction word at a time, in the encodings the decoders read, and runs
+ * them the way the command line would.
+ */
+final class TestPrograms {
+    static final int BREAK = 5 << 26;
+
+    private static final int CATEGORY_2 = 1 << 30;
+    private static final int CATEGORY_3 = 2 << 30;
+
+    private TestPrograms() {
+    }
+
+    /**
+     * @return the address of the instruction (or data word) at index in the input.
+     */
+    static int address( int index ) {
+        return Simulator.INSTRUCTION_START_ADDRESS + index * Simulator.MEMORY_SPACING;
+    }
+
+    /* Category 1 */
+
+    static int j( int target ) {
+        return target >>> 2;
+    }
+
+    /**
+     * @param offset in instructions, from the one after the branch.
+     */
+    static int beq( int rs, int rt, int offset ) {
+        return category1( 2, rs, rt, offset );
+    }
+
+    static int bgtz( int rs, int offset ) {
+        return category1( 4, rs, 0, offset );
+    }
+
+    static int sw( int rt, int offset, int base ) {
+        return category1( 6, base, rt, offset );
+    }
+
+    static int lw( int rt, int offset, int base ) {
+        return category1( 7, base, rt, offset );
+    }
+
+    /* Category 2 */
+
+    static int add( int rd, int rs, int rt ) {
+        return category2( 0, rd, rs, rt );
+    }
+
+    static int and( int rd, int rs, int rt ) {
+        return category2( 3, rd, rs, rt );
+    }
+
+    static int or( int rd, int rs, int rt ) {
+        return category2( 4, rd, rs, rt );
+    }
+
+    static int xor( int rd, int rs, int rt ) {
+        return category2( 5, rd, rs, rt );
+    }
+
+    static int nor( int rd, int rs, int rt ) {
+        return category2( 6, rd, rs, rt );
+    }
+
+    /**
+     * @return a category 1 word with an opcode nothing decodes to.
+     */
+    static int illegal() {
+        return category1( 1, 0, 0, 0 );
+    }
+
+    /* Category 3 */
+
+    static int addi( int rt, int rs, int immediate ) {
+        return category3( 0, rt, rs, immediate );
+    }
+
+    static int andi( int rt, int rs, int immediate ) {
+        return category3( 1, rt, rs, immediate );
+    }
+
+    static int ori( int rt, int rs, int immediate ) {
+        return category3( 2, rt, rs, immediate );
+    }
+
+    static int xori( int rt, int rs, int immediate ) {
+        return category3( 3, rt, rs, immediate );
+    }
+
+    private static int category1( int opcode, int rs, int rt, int immediate ) {
+        return ( opcode << 26 ) | ( rs << 21 ) | ( rt << 16 ) | ( immediate & 0xFFFF );
+    }
+
+    private static int category2( int opcode, int rd, int rs, int rt ) {
+        return CATEGORY_2 | ( rs << 25 ) | ( rt << 20 ) | ( opcode << 16 ) | ( rd << 11 );
+    }
+
+    private static int category3( int opcode, int rt, int rs, int immediate ) {
+        return CATEGORY_3 | ( rs << 25 ) | ( rt << 20 ) | ( opcode << 16 ) | ( immediate & 0xFFFF );
+    }
+
+    /* Programs */
+
+    /**
+     * Sums the first three data words into R4 and stores the sum in the fourth. 19 cycles; the BGTZ at 152 is taken
+     * twice, then falls through.
+     */
+    static int[] sumLoop() {
+        final int data = address( 9 );
+        return new int[] {
+                addi( 1, 0, 3 ),            //128
+                addi( 2, 0, data ),         //132
+                lw( 3, 0, 2 ),              //136 loop:
+                add( 4, 4, 3 ),             //140
+                addi( 2, 2, 4 ),            //144
+                addi( 1, 1, -1 ),           //148
+                bgtz( 1, -5 ),              //152 back to 136
+                sw( 4, 0, 2 ),              //156
+                BREAK,                      //160
+                10, -20, 30, 0 };           //164
+    }
+
+    /**
+     * @return the input as the command line reads it: one line of 32 binary digits per word.
+     */
+    static String text( int... words ) {
+        StringBuilder text = new StringBuilder();
+        for ( int word : words ) {
+            String digits = Integer.toBinaryString( word );
+            for ( int pad = digits.length(); pad != 32; ++pad ) {
+                text.append( '0' );
+            }
+            text.append( digits ).append( '\n' );
+        }
+        return text.toString();
+    }
+
+    /**
+     * Decodes on the calling thread.
+     */
+    static DecodedProgram decode( int... words ) {
+        ProgramDecoder decoder = new ProgramDecoder( null );
+        for ( int word : words ) {
+            decoder.processWord( word );
+        }
+        return decoder.build();
+    }
+
+    static Simulator load( int... words ) {
+        Simulator simulator = new Simulator();
+        simulator.load( decode( words ) );
+        return simulator;
+    }
+
+    /**
+     * Runs the simulator to the end, the way the command line does.
+     * @return the simulation output.
+     */
+    static String run( Simulator simulator ) throws IOException {
+        StringWriter output = new StringWriter();
+        simulator.run( output );
+        return output.toString();
+    }
+
+    /**
+     * @param traceMode in the command line's syntax, such as "full" or "none".
+     */
+    static String run( Simulator simulator, String traceMode ) throws IOException {
+        simulator.setTraceMode( TraceMode.parse( traceMode ) );
+        return run( simulator );
+    }
+
+    /**
+     * @return the number after "name:\t" in a report, such as the one ExecutionObserver.writeReport() writes.
+     */
+    static long reportValue( ExecutionObserver observer, String name ) throws IOException {
+        StringWriter report = new StringWriter();
+        observer.writeReport( report );
+        for ( String line : report.toString().split( "\n" ) ) {
+            if ( line.startsWith( name + ":\t" ) ) {
+                return Long.parseLong( line.substring( name.length() + 2 ) );
+            }
+        }
+        throw new AssertionError( "No " + name + " in " + report );
+    }
+}
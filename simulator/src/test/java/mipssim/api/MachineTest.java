@@ -0,0 +1,158 @@
+package mipssim.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the simulator the way embedding code does: from a named package, through nothing but this package.
+ */
+class MachineTest {
+    private static final int BREAK = 5 << 26;
+
+    private static int addi( int rt, int rs, int immediate ) {
+        return ( 2 << 30 ) | ( rs << 25 ) | ( rt << 20 ) | ( immediate & 0xFFFF );
+    }
+
+    private static int sw( int rt, int offset, int base ) {
+        return ( 6 << 26 ) | ( base << 21 ) | ( rt << 16 ) | ( offset & 0xFFFF );
+    }
+
+    private static int bgtz( int rs, int offset ) {
+        return ( 4 << 26 ) | ( rs << 21 ) | ( offset & 0xFFFF );
+    }
+
+    /**
+     * Counts R1 down from 3, storing it each time around. 11 cycles.
+     */
+    private static final int[] COUNTDOWN = {
+            addi( 1, 0, 3 ),        //128
+            sw( 1, 148, 0 ),        //132 loop:
+            addi( 1, 1, -1 ),       //136
+            bgtz( 1, -3 ),          //140 back to 132
+            BREAK,                  //144
+            0 };                    //148
+
+    private static byte[] text( int... words ) {
+        StringBuilder text = new StringBuilder();
+        for ( int word : words ) {
+            for ( int bit = 31; bit >= 0; --bit ) {
+                text.append( ( word >>> bit ) & 1 );
+            }
+            text.append( '\n' );
+        }
+        return text.toString().getBytes( StandardCharsets.US_ASCII );
+    }
+
+    private static Machine load( int... words ) throws IOException {
+        Machine machine = Machine.create();
+        machine.load( text( words ), Machine.FORMAT_TEXT );
+        return machine;
+    }
+
+    @Test
+    void runsAProgramToTheEnd() throws IOException {
+        Machine machine = load( COUNTDOWN );
+
+        assertEquals( 11, machine.step( 100 ) );
+        assertTrue( machine.isFinished() );
+        assertEquals( 11, machine.getCycleCount() );
+        assertEquals( 148, machine.getMemoryStartAddress() );
+        assertArrayEquals( new int[] { 1 }, machine.getData() );
+    }
+
+    @Test
+    void loadsRawWords() throws IOException {
+        ByteBuffer image = ByteBuffer.allocate( COUNTDOWN.length * 4 ).order( ByteOrder.LITTLE_ENDIAN );
+        for ( int word : COUNTDOWN ) {
+            image.putInt( word );
+        }
+        image.flip();
+        Machine machine = Machine.create();
+        machine.load( image, Machine.FORMAT_LITTLE_ENDIAN );
+
+        assertEquals( load( COUNTDOWN ).getDisassemblyOutput(), machine.getDisassemblyOutput() );
+    }
+
+    @Test
+    void stopsWhereAsked() throws IOException {
+        Machine machine = load( COUNTDOWN );
+
+        assertTrue( machine.runUntilAddress( 140, 100 ) );
+        assertEquals( 3, machine.getCycleCount() );
+        assertEquals( 2, machine.getRegister( 1 ) );
+        assertTrue( machine.runUntilCycle( 7 ) );
+        assertEquals( 7, machine.getCycleCount() );
+        assertFalse( machine.runUntilAddress( 128, 100 ) );
+        assertTrue( machine.isFinished() );
+    }
+
+    @Test
+    void listenersHearEverything() throws IOException {
+        final List<String> events = new ArrayList<String>();
+        Machine machine = load( COUNTDOWN );
+        machine.addListener( new MachineListener() {
+            @Override
+            public void memoryWritten( int address, int value ) {
+                events.add( "write " + address + " " + value );
+            }
+
+            @Override
+            public void branchResolved( int address, boolean taken, int nextAddress ) {
+                events.add( "branch " + address + " " + taken + " " + nextAddress );
+            }
+        } );
+        machine.runUntilCycle( 5 );
+
+        assertEquals( "[write 148 3, branch 140 true 132, write 148 2]", events.toString() );
+    }
+
+    @Test
+    void faultsArePrecise() throws IOException {
+        Machine machine = load( addi( 1, 0, 1 ), sw( 1, 2, 1 ), BREAK, 0 );
+        MachineFault fault = assertThrows( MachineFault.class, () -> machine.step( 10 ) );
+
+        assertEquals( 132, fault.getProgramCounter() );
+        assertEquals( 2, fault.getCycle() );
+        assertEquals( "Memory address 3 is not word aligned", fault.getReason() );
+        assertEquals( 132, machine.getProgramCounter() );
+        assertEquals( 1, machine.getCycleCount() );
+    }
+
+    @Test
+    void stateCanBeChangedFromOutside() throws IOException {
+        Machine machine = load( COUNTDOWN );
+        machine.setBlockCompilation( false );
+        machine.step( 1 );
+        machine.setRegister( 1, 1 );
+        machine.step( 100 );
+
+        assertEquals( 1, machine.readMemory( 148 ) );
+        assertEquals( 5, machine.getCycleCount() );
+        machine.writeMemory( 148, 42 );
+        assertEquals( 42, machine.getData()[0] );
+        assertEquals( 0, machine.getRegisters()[1] );
+    }
+
+    @Test
+    void refusesRegistersThatDoNotExist() throws IOException {
+        Machine machine = load( COUNTDOWN );
+        for ( int registerNumber : new int[] { -1, 32, Integer.MAX_VALUE } ) {
+            assertThrows( IllegalArgumentException.class, () -> machine.getRegister( registerNumber ) );
+            assertThrows( IllegalArgumentException.class, () -> machine.setRegister( registerNumber, 1 ) );
+        }
+        machine.setRegister( 31, 7 );
+        assertEquals( 7, machine.getRegister( 31 ) );
+    }
+}